@@ -0,0 +1,123 @@
+package simulation2d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the 2D solver on preset scenes scaled up to a target particle count.
+ * The scene is stepped a few times before measuring, so that springs and neighbor lists are populated;
+ * the phase benchmarks then run a single phase of simulationStep() on that state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FluidSystemBenchmark {
+    private static final int PRESET_BOX = Simulation.boxWidth; // Box size the presets are designed for
+    private static final int SETTLE_STEPS = 10;
+
+    @Param({"0", "3"})
+    public int model;
+
+    @Param({"1000", "10000", "100000"})
+    public int particles;
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"0"})
+    public float skin;
+
+    @Param({"0"})
+    public int reorder; // Reorder interval; above 0 the phase benchmarks also run on Morton sorted storage
+
+    private FluidSystem fluidSystem;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fluidSystem = createScene(model, particles);
+        fluidSystem.setThreadCount(threads);
+        fluidSystem.setNeighborSkin(skin);
+        for (int s = 0; s < SETTLE_STEPS; s++) {
+            fluidSystem.simulationStep();
+        }
+        fluidSystem.setReorderInterval(reorder);
+        if (reorder > 0) {
+            fluidSystem.reorderParticles();
+        }
+        fluidSystem.findNeighbors();
+    }
+
+    /**
+     * Load a preset into a box scaled so that the fluid holds about the requested number of particles
+     */
+    static FluidSystem createScene(int model, int particles) {
+        Scene scene;
+        try {
+            scene = Scene.preset(model);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        float scale = (float) Math.sqrt((double) particles / scene.countParticles(PRESET_BOX, PRESET_BOX));
+        int box = Math.round(PRESET_BOX * scale);
+        return scene.createFluidSystem(box, box);
+    }
+
+    @Benchmark
+    public void step() {
+        fluidSystem.simulationStep();
+    }
+
+    @Benchmark
+    public void neighbors() {
+        // Always measure a full rebuild, even when the skin would allow reusing the lists
+        fluidSystem.invalidateNeighbors();
+        fluidSystem.findNeighbors();
+    }
+
+    @Benchmark
+    public void gravity() {
+        fluidSystem.applyGravity();
+    }
+
+    @Benchmark
+    public void viscosity() {
+        fluidSystem.applyViscosity();
+    }
+
+    @Benchmark
+    public void springAdjustment() {
+        fluidSystem.adjustSprings();
+    }
+
+    @Benchmark
+    public void springDisplacement() {
+        fluidSystem.applySpringDisplacements();
+    }
+
+    @Benchmark
+    public void relaxation() {
+        fluidSystem.doubleDensityRelaxation();
+    }
+
+    @Benchmark
+    public void collision() {
+        fluidSystem.resolveCollision();
+    }
+}
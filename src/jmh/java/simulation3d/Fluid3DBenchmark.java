@@ -0,0 +1,128 @@
+package simulation3d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the 3D solver on preset scenes scaled up to a target particle count.
+ * The scene is stepped a few times before measuring, so that springs and neighbor lists are populated;
+ * the phase benchmarks then run a single phase of simulationStep() on that state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Fluid3DBenchmark {
+    private static final int SETTLE_STEPS = 4;
+
+    @Param({"0", "3"})
+    public int model;
+
+    @Param({"1000", "10000", "100000"})
+    public int particles;
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"0"})
+    public float skin;
+
+    @Param({"0"})
+    public int reorder; // Reorder interval; above 0 the phase benchmarks also run on Morton sorted storage
+
+    private Fluid3D fluid;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fluid = createScene(model, particles);
+        fluid.setThreadCount(threads);
+        fluid.setNeighborSkin(skin);
+        for (int s = 0; s < SETTLE_STEPS; s++) {
+            fluid.simulationStep();
+        }
+        fluid.setReorderInterval(reorder);
+        if (reorder > 0) {
+            fluid.reorderParticles();
+        }
+        fluid.findNeighbors();
+    }
+
+    /**
+     * Load a preset into a box scaled so that the fluid holds about the requested number of particles.
+     * The box size lives in static fields of Simulation3D, so only one scene exists at a time.
+     */
+    static Fluid3D createScene(int model, int particles) {
+        Scene3D scene;
+        try {
+            scene = Scene3D.preset(model);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        double scale = Math.cbrt((double) particles / scene.countParticles(scene.width, scene.height, scene.length));
+        Simulation3D.boxWidth = (int) Math.round(scene.width * scale);
+        Simulation3D.canvasHeight = (int) Math.round(scene.height * scale);
+        Simulation3D.canvasLength = (int) Math.round(scene.length * scale);
+
+        Fluid3D fluid = new Fluid3D();
+        scene.addTo(fluid, Simulation3D.boxWidth, Simulation3D.canvasHeight, Simulation3D.canvasLength);
+        return fluid;
+    }
+
+    @Benchmark
+    public void step() {
+        fluid.simulationStep();
+    }
+
+    @Benchmark
+    public void neighbors() {
+        // Always measure a full rebuild, even when the skin would allow reusing the lists
+        fluid.invalidateNeighbors();
+        fluid.findNeighbors();
+    }
+
+    @Benchmark
+    public void gravity() {
+        fluid.applyGravity();
+    }
+
+    @Benchmark
+    public void viscosity() {
+        fluid.applyViscosity();
+    }
+
+    @Benchmark
+    public void springAdjustment() {
+        fluid.adjustSprings();
+    }
+
+    @Benchmark
+    public void springDisplacement() {
+        fluid.applySpringDisplacements();
+    }
+
+    @Benchmark
+    public void relaxation() {
+        fluid.doubleDensityRelaxation();
+    }
+
+    @Benchmark
+    public void collision() {
+        fluid.resolveCollision();
+    }
+}
@@ -0,0 +1,1249 @@
+package core;
+
+import core.SolverMetrics.Phase;
+
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * Viscoelastic fluid solver shared by the 2D and 3D simulations. It runs on the flat particle arrays of a
+ * {@link ParticleArrays} in either dimension: the z arrays are null in 2D and every phase skips the z terms then.
+ * <p>
+ * The front ends subclass it with their own vector types. They provide the box, the gravity, the emitters and sinks
+ * and the rigid spheres through the abstract methods, which the solver calls once per step.
+ * <p>
+ * The 2D and 3D models differ in three constants, which the front ends pass in: whether a particle counts towards
+ * its own density, how far a relaxed particle recoils relative to the push of its neighbor, and the friction of the
+ * particles against non-movable spheres.
+ */
+public abstract class FluidSolver {
+    private static final float rho_0 = 10F; // Rest density
+    private static final float k = (float) 0.01; // Pressure-density linear coefficient
+    private static final float k_near = (float) 0.01; // NearPressure-density linear coefficient
+    private static final float k_spring = (float) 0.3; // Spring elasticity coefficient
+    private static final float yieldRatio = 0.15F;
+    private static final float miu = 0.5F; // Friction parameter
+    private static final float miu_rigid = 0F; // Friction parameter for movable rigid bodies
+    private static final float CUTOFF_MARGIN = 1.001F; // Pairs with r^2 > h^2 * CUTOFF_MARGIN are certainly beyond h
+    private static final float COURANT = 0.5F; // Largest fraction of h a particle may travel in one adaptive step
+    private static final float STRAIN_LIMIT = 0.1F; // Largest fraction of h a spring may move its ends in one adaptive step
+    private static final int MAX_SUBSTEPS = 64; // Per frame; the adaptive step never drops below frameTime / 64
+    private static final float WALL_BOUNCE = -0.2F; // Velocity factor of a movable body hitting a wall
+    private final int dimensions; // 2 or 3
+    private final float h; // Interaction range
+    private final boolean selfDensity; // A particle counts towards its own density
+    private final float recoil; // Displacement of a relaxed particle per unit push of its neighbor
+    private final float sphereFriction; // Friction of the particles against non-movable spheres
+    private final boolean lowWallByCenter; // A movable body stops at the y = 0 wall with its center, not its edge
+    private float dt; // Timestamp
+    private boolean adaptiveTimeStep = false; // Choose dt before every step from the velocities and spring strains
+    private float maxTimeStep; // Upper bound of the adaptive step
+    private final ParticleArrays particles; // Fluid particles
+    private final RigidBodies bodies = new RigidBodies(); // Rigid spheres of the current collision phase
+    private final SpringTable springs; // Springs between close particle pairs
+    private SpatialGrid grid; // Neighbor search grid with cell size h + skin
+    private final NeighborList neighbors; // Neighbors within h + skin of every particle at the last rebuild
+    private final PairKernels kernels = PairKernels.SELECTED; // Scalar or SIMD distance and density kernels
+    private float[] pairDistance = new float[0]; // Distance of each neighbor list entry, filled by the phase using it
+    private float skin = 0; // Verlet skin of the neighbor lists
+    private final MortonOrder mortonOrder; // Storage order of the particles along the Morton curve of the cells
+    private int reorderInterval = 0; // Steps between two reorderings of the particle storage, 0 never reorders
+    private int stepsSinceReorder = 0; // Steps since the last reordering, kept in checkpoints
+    private final SolverMetrics metrics = new SolverMetrics(); // Phase timings and counters
+    private ParallelExecutor executor; // Runs the phases on one or more threads
+    private boolean deterministic = false; // Sweep in the order of the parallel mode whatever the thread count
+    private Random random = new Random(); // Source of everything random, e.g. the sphere colors
+    private float[] springDx = new float[0]; // Per-spring displacements of the parallel spring phase
+    private float[] springDy = new float[0];
+    private float[] springDz = new float[0];
+    private boolean jacobiRelaxation = false; // Relax every particle from the same positions instead of in sequence
+    private int relaxationIterations = 1; // Relaxation sweeps per step
+    private float[] nearPressure = new float[0]; // Per-particle near-pressure of the relaxation
+    private float minPressure = 0; // Pressure range of the last relaxation
+    private float maxPressure = 0;
+    private float[] relaxDx = new float[0]; // Per-particle displacements of the Jacobi relaxation
+    private float[] relaxDy = new float[0];
+    private float[] relaxDz = new float[0];
+    private int[] fixedBodies = new int[0]; // Non-movable bodies of the current collision phase, by sphere grid index
+    private final SphereGrid sphereGrid; // Broad phase of the non-movable spheres with cell size h
+    private double[] gridX = new double[0]; // Non-movable spheres the sphere grid was built from
+    private double[] gridY = new double[0];
+    private double[] gridZ = new double[0];
+    private double[] gridRadius = new double[0];
+    private int gridSphereCount = -1; // -1 until the sphere grid is built
+    private float collisionBoxX = 0; // Box extents of the current collision phase
+    private float collisionBoxY = 0;
+    private float collisionBoxZ = 0;
+    private final ParallelExecutor.RangeTask particleCollisions = this::resolveParticleCollisions;
+    private final double[][] bodyCenter = new double[3][]; // Per-axis body arrays of the current collision phase
+    private final double[][] bodyVelocity = new double[3][];
+    private final double[] netImpulse = new double[3]; // Scratch impulse of the particles on a movable body
+    private float maxParticleAge = 0; // Particles older than this are removed, 0 keeps them forever
+    private int[] particleRank = new int[0]; // Index of each particle after the removals of a step, -1 if removed
+    // Variadic Parameters
+    public float alpha = 0.3F; // Plasticity constant
+    public float delta = 0.0F; // Viscosity's quadratic dependence
+    public float beta = 0.01F;  // Viscosity's linear dependence
+
+    /**
+     * Create a solver on the given particles, in their number of dimensions
+     *
+     * @param h               interaction range
+     * @param timeStep        initial and maximum adaptive time step
+     * @param selfDensity     whether a particle counts towards its own density
+     * @param recoil          displacement of a relaxed particle per unit push of each neighbor
+     * @param sphereFriction  friction of the particles against non-movable spheres
+     * @param lowWallByCenter whether a movable body stops at the y = 0 wall with its center rather than its edge
+     */
+    protected FluidSolver(ParticleArrays particles, float h, float timeStep, boolean selfDensity, float recoil,
+                          float sphereFriction, boolean lowWallByCenter) {
+        this.dimensions = particles.dimensions;
+        this.h = h;
+        this.dt = timeStep;
+        this.maxTimeStep = timeStep;
+        this.selfDensity = selfDensity;
+        this.recoil = recoil;
+        this.sphereFriction = sphereFriction;
+        this.lowWallByCenter = lowWallByCenter;
+        this.particles = particles;
+        this.springs = new SpringTable();
+        this.grid = new SpatialGrid(dimensions, h);
+        this.neighbors = new NeighborList();
+        this.sphereGrid = new SphereGrid(dimensions, h);
+        this.mortonOrder = new MortonOrder(dimensions, h);
+        this.executor = new ParallelExecutor(1);
+    }
+
+    /**
+     * Extent of the box along the axis, 0 for x, 1 for y and 2 for z; the box starts at the origin
+     */
+    protected abstract float boxExtent(int axis);
+
+    /**
+     * Gravity acceleration along the axis
+     */
+    protected abstract float gravityComponent(int axis);
+
+    /**
+     * Whether there is any sink, which lets the solver skip the sink test of every particle
+     */
+    protected abstract boolean hasSinks();
+
+    /**
+     * Whether a particle at the given position is inside a sink; z is 0 in 2D
+     */
+    protected abstract boolean inSink(float x, float y, float z);
+
+    /**
+     * Let the emitters add their particles of a step of the given length and return how many were added
+     */
+    protected abstract int emitParticles(float dt);
+
+    /**
+     * Add every rigid sphere to the empty bodies, in a fixed order
+     */
+    protected abstract void gatherRigidBodies(RigidBodies bodies);
+
+    /**
+     * Copy the centers and velocities of the movable bodies back to the spheres they were gathered from
+     */
+    protected abstract void scatterRigidBodies(RigidBodies bodies);
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Run the simulation on the given number of threads.
+     * With more than one thread, the pairwise phases sweep the particles one grid cell color at a time and springs
+     * are relaxed Jacobi-style, so results differ from the serial sweep but do not depend on the thread count.
+     * The deterministic mode sweeps the same way on a single thread.
+     */
+    public void setThreadCount(int threads) {
+        this.executor.shutdown();
+        this.executor = new ParallelExecutor(threads);
+        // The parallel sweep needs the cell colors of the last rebuild
+        this.neighbors.invalidate();
+    }
+
+    public int getThreadCount() {
+        return executor.getThreads();
+    }
+
+    /**
+     * Make the results independent of the thread count. The serial step normally sweeps the particles in index order
+     * and moves the ends of each spring in turn, which the parallel step cannot do. The deterministic mode sweeps and
+     * sums in the fixed order of the parallel step on any number of threads, one included, so a run can be repeated
+     * bit for bit on another machine.
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+        // The colored sweep needs the cell colors of the last rebuild
+        this.neighbors.invalidate();
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Whether the pairwise phases sweep one grid cell color at a time and the springs are relaxed Jacobi-style
+     */
+    private boolean isColoredSweep() {
+        return deterministic || executor.isParallel();
+    }
+
+    /**
+     * Seed the random numbers, so that e.g. the sphere colors repeat from run to run
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Retrieve the random numbers of the solver, seeded by {@link #setSeed}
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Keep the neighbor lists over several steps: lists are built with a radius of h + skin and only rebuilt once
+     * some particle has moved by more than skin / 2. A skin of 0 rebuilds them every step.
+     * Pairs that come within h during a step are then taken into account even if they were further apart at its start.
+     */
+    public void setNeighborSkin(float skin) {
+        if (skin < 0) {
+            throw new IllegalArgumentException("Skin must not be negative");
+        }
+        this.skin = skin;
+        this.grid = new SpatialGrid(dimensions, h + skin);
+        this.neighbors.invalidate();
+    }
+
+    public float getNeighborSkin() {
+        return skin;
+    }
+
+    /**
+     * Sort the particle storage along the Morton curve of the grid cells every given number of steps, 0 never.
+     * Particles are appended in insertion order and spatial neighbors drift apart in memory over time; sorting them
+     * again keeps the neighbor accesses of the pairwise phases cache friendly. The sort is done at the first
+     * neighbor list rebuild once the interval has passed. It renumbers the particles, so the Gauss-Seidel sweeps
+     * visit them in a different order and results differ from an unsorted run.
+     */
+    public void setReorderInterval(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Reorder interval must not be negative");
+        }
+        this.reorderInterval = steps;
+    }
+
+    public int getReorderInterval() {
+        return reorderInterval;
+    }
+
+    /**
+     * Steps since the last reordering, saved with checkpoints so that a restored run reorders at the same step
+     */
+    public int getStepsSinceReorder() {
+        return stepsSinceReorder;
+    }
+
+    public void setStepsSinceReorder(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Steps since the last reordering must not be negative");
+        }
+        this.stepsSinceReorder = steps;
+    }
+
+    /**
+     * Sort the particle storage along the Morton curve now, renumbering the springs with the particles
+     */
+    public void reorderParticles() {
+        int n = particles.size();
+        mortonOrder.build(n, particles.x, particles.y, particles.z);
+        particles.permute(mortonOrder.order());
+        springs.remap(mortonOrder.rank());
+        this.neighbors.invalidate();
+        stepsSinceReorder = 0;
+    }
+
+    /**
+     * Choose how the double density relaxation is swept. The default Gauss-Seidel sweep moves the neighbors of each
+     * particle before the next one is relaxed, so it depends on the particle order. The Jacobi sweep computes all
+     * pressures first and then moves every particle by the sum of its pair displacements in one pass, which is
+     * data-parallel and independent of the particle order and of the thread count, but softer per sweep.
+     */
+    public void setJacobiRelaxation(boolean jacobiRelaxation) {
+        this.jacobiRelaxation = jacobiRelaxation;
+    }
+
+    public boolean isJacobiRelaxation() {
+        return jacobiRelaxation;
+    }
+
+    /**
+     * Run the relaxation several times per step, e.g. to give the Jacobi sweep back the stiffness of Gauss-Seidel
+     */
+    public void setRelaxationIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Relaxation iterations must be at least 1");
+        }
+        this.relaxationIterations = iterations;
+    }
+
+    public int getRelaxationIterations() {
+        return relaxationIterations;
+    }
+
+    /**
+     * Set the length of the next steps; with the adaptive step this is only the step the controller starts from
+     */
+    public void setTimeStep(float dt) {
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException("Time step must be positive");
+        }
+        this.dt = dt;
+    }
+
+    public float getTimeStep() {
+        return dt;
+    }
+
+    /**
+     * Let {@link #advance} pick the step length before every step: the largest step up to the maximum step with which
+     * no particle travels more than half of h and no spring displaces its ends by more than a tenth of h. Switching
+     * it off goes back to the maximum step, since the last adaptive step may be far shorter.
+     */
+    public void setAdaptiveTimeStep(boolean adaptiveTimeStep) {
+        if (this.adaptiveTimeStep && !adaptiveTimeStep) {
+            this.dt = maxTimeStep;
+        }
+        this.adaptiveTimeStep = adaptiveTimeStep;
+    }
+
+    public boolean isAdaptiveTimeStep() {
+        return adaptiveTimeStep;
+    }
+
+    public void setMaxTimeStep(float maxTimeStep) {
+        if (!(maxTimeStep > 0)) {
+            throw new IllegalArgumentException("Maximum time step must be positive");
+        }
+        this.maxTimeStep = maxTimeStep;
+    }
+
+    public float getMaxTimeStep() {
+        return maxTimeStep;
+    }
+
+    /**
+     * Advance the simulation by frameTime and return the number of steps taken. With a fixed step this is
+     * frameTime / dt steps, at least one. With the adaptive step, the remaining time is split into equal steps no
+     * longer than the stable step, which is re-evaluated after every step.
+     */
+    public int advance(float frameTime) {
+        int substeps = 0;
+        if (!adaptiveTimeStep) {
+            int steps = Math.max(1, Math.round(frameTime / dt));
+            for (; substeps < steps; substeps++) {
+                simulationStep();
+            }
+        } else {
+            float remaining = frameTime;
+            float minTimeStep = frameTime / MAX_SUBSTEPS;
+            while (remaining > minTimeStep * 1e-3F) {
+                float stable = Math.max(stableTimeStep(), minTimeStep);
+                dt = remaining / (float) Math.ceil(remaining / stable);
+                simulationStep();
+                remaining -= dt;
+                substeps++;
+            }
+        }
+        metrics.frameDone(substeps, dt);
+        return substeps;
+    }
+
+    /**
+     * Largest step the adaptive controller allows for the current velocities and spring lengths
+     */
+    public float stableTimeStep() {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        float[] vx = particles.vx, vy = particles.vy, vz = particles.vz;
+        float maxSpeedSquared = 0;
+        for (int i = 0; i < particles.size(); i++) {
+            float speedSquared = vx[i] * vx[i] + vy[i] * vy[i];
+            if (z != null) {
+                speedSquared += vz[i] * vz[i];
+            }
+            maxSpeedSquared = Math.max(maxSpeedSquared, speedSquared);
+        }
+        // A spring moves its ends by dt^2 * k_spring * (1 - L / h) * |L - r| / 2, see applySpringDisplacements
+        float maxStrain = 0;
+        for (int s = 0; s < springs.size(); s++) {
+            float L = springs.restLength[s];
+            if (L >= h) continue;
+            float r_ij_norm = distance(springs.first[s], springs.second[s]);
+            maxStrain = Math.max(maxStrain, 0.5F * k_spring * (1 - L / h) * Math.abs(L - r_ij_norm) / h);
+        }
+        float stable = maxTimeStep;
+        if (maxSpeedSquared > 0) {
+            stable = Math.min(stable, COURANT * h / (float) Math.sqrt(maxSpeedSquared));
+        }
+        if (maxStrain > 0) {
+            stable = Math.min(stable, (float) Math.sqrt(STRAIN_LIMIT / maxStrain));
+        }
+        return stable;
+    }
+
+    /**
+     * Distance between particles i and j
+     */
+    private float distance(int i, int j) {
+        float r_x = particles.x[i] - particles.x[j];
+        float r_y = particles.y[i] - particles.y[j];
+        float r_squared = r_x * r_x + r_y * r_y;
+        if (particles.z != null) {
+            float r_z = particles.z[i] - particles.z[j];
+            r_squared += r_z * r_z;
+        }
+        return (float) Math.sqrt(r_squared);
+    }
+
+    /**
+     * Retrieve the timings and counters of the last step
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Rebuild the neighbor lists on the next step, e.g. after particles were moved from the outside
+     */
+    public void invalidateNeighbors() {
+        this.neighbors.invalidate();
+    }
+
+    /**
+     * Advance the simulation by one time step. The phases are public so that benchmarks can time them one by one.
+     */
+    public void simulationStep() {
+        long start = System.nanoTime();
+        long time = start;
+        exchangeParticles();
+        time = metrics.phaseDone(Phase.EMISSION, time);
+        findNeighbors();
+        time = metrics.phaseDone(Phase.NEIGHBORS, time);
+        applyGravity();
+        time = metrics.phaseDone(Phase.GRAVITY, time);
+        applyViscosity();
+        time = metrics.phaseDone(Phase.VISCOSITY, time);
+        positionUpdate();
+        time = metrics.phaseDone(Phase.POSITION_UPDATE, time);
+        adjustSprings();
+        time = metrics.phaseDone(Phase.SPRING_ADJUSTMENT, time);
+        applySpringDisplacements();
+        time = metrics.phaseDone(Phase.SPRING_DISPLACEMENT, time);
+        doubleDensityRelaxation();
+        time = metrics.phaseDone(Phase.RELAXATION, time);
+        resolveCollision();
+        time = metrics.phaseDone(Phase.COLLISION, time);
+        velocityUpdate();
+        metrics.phaseDone(Phase.VELOCITY_UPDATE, time);
+        metrics.stepDone(particles.size(), start);
+    }
+
+    public int getParticleCount() {
+        return particles.size();
+    }
+
+    /**
+     * Remove all particles and the springs between them
+     */
+    public void clearParticles() {
+        this.particles.clear();
+        this.springs.clear();
+        this.neighbors.invalidate();
+    }
+
+    /**
+     * Retrieve the spring table, used to save and restore checkpoints
+     */
+    public SpringTable getSprings() {
+        return springs;
+    }
+
+    /**
+     * Remove particles once they have existed for the given simulated time, 0 keeps them forever.
+     * With emitters this bounds the particle count even without sinks.
+     */
+    public void setMaxParticleAge(float maxParticleAge) {
+        if (!(maxParticleAge >= 0)) {
+            throw new IllegalArgumentException("Maximum particle age must not be negative");
+        }
+        this.maxParticleAge = maxParticleAge;
+    }
+
+    public float getMaxParticleAge() {
+        return maxParticleAge;
+    }
+
+    /**
+     * Age the particles, remove the ones that are too old or inside a sink and let the emitters add new ones.
+     * The removed particles are compacted away in one pass that keeps the others in order, and their springs are
+     * dropped in one pass over the spring table, so the storage stays dense and the cost does not depend on how many
+     * particles go.
+     */
+    public void exchangeParticles() {
+        int n = particles.size();
+        float[] x = particles.x, y = particles.y, z = particles.z, age = particles.age;
+        int kept = n;
+        boolean sinks = hasSinks();
+        if (maxParticleAge > 0 || sinks) {
+            if (particleRank.length < n) {
+                particleRank = new int[Math.max(n, 2 * particleRank.length)];
+            }
+            kept = 0;
+            for (int i = 0; i < n; i++) {
+                age[i] += dt;
+                boolean removed = maxParticleAge > 0 && age[i] > maxParticleAge;
+                if (!removed && sinks) {
+                    removed = inSink(x[i], y[i], z == null ? 0 : z[i]);
+                }
+                particleRank[i] = removed ? -1 : kept++;
+            }
+            if (kept < n) {
+                particles.compact(particleRank);
+                springs.remap(particleRank);
+                this.neighbors.invalidate();
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                age[i] += dt;
+            }
+        }
+        int emitted = emitParticles(dt);
+        metrics.particlesExchanged(emitted, n - kept);
+    }
+
+    /**
+     * Bin the particles into the grid and collect the neighbors of each particle, unless the lists of an earlier
+     * step are still valid for the current positions
+     */
+    public void findNeighbors() {
+        int n = particles.size();
+        stepsSinceReorder++;
+        if (skin > 0 && !this.neighbors.isStale(n, particles.x, particles.y, particles.z, skin / 2)) {
+            metrics.neighborsFound(this.neighbors.pairCount(), false);
+            return;
+        }
+        if (reorderInterval > 0 && stepsSinceReorder >= reorderInterval) {
+            reorderParticles();
+        }
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        this.grid.build(n, x, y, z);
+        this.neighbors.build(this.grid, n, x, y, z, h + skin, executor);
+        if (pairDistance.length < this.neighbors.pairCount()) {
+            pairDistance = new float[Math.max(this.neighbors.pairCount(), 2 * pairDistance.length)];
+        }
+        if (isColoredSweep()) {
+            this.grid.buildColoredRuns(n);
+        }
+        metrics.neighborsFound(this.neighbors.pairCount(), true);
+    }
+
+    /**
+     * Run a pairwise update that writes to particle i and its neighbors for every particle i.
+     * The parallel mode runs the cells of one color concurrently, as their neighborhoods never overlap.
+     */
+    private void forEachParticlePairwise(IntConsumer update) {
+        if (!isColoredSweep()) {
+            for (int i = 0; i < particles.size(); i++) {
+                update.accept(i);
+            }
+            return;
+        }
+        for (int color = 0; color < grid.colorCount(); color++) {
+            int firstRun = grid.colorRunStart(color);
+            executor.forEach(grid.colorRunStart(color + 1) - firstRun, 16, (from, to) -> {
+                for (int run = firstRun + from; run < firstRun + to; run++) {
+                    for (int slot = grid.runStart(run); slot < grid.runStart(run + 1); slot++) {
+                        update.accept(grid.runParticle(slot));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Apply gravity to each particles
+     */
+    public void applyGravity() {
+        // v = v + dt * g
+        float gx = gravityComponent(0) * dt;
+        float gy = gravityComponent(1) * dt;
+        float gz = dimensions == 3 ? gravityComponent(2) * dt : 0;
+        float[] vx = particles.vx, vy = particles.vy, vz = particles.vz;
+        executor.forEach(particles.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                vx[i] += gx;
+                vy[i] += gy;
+            }
+            if (vz != null) {
+                for (int i = from; i < to; i++) {
+                    vz[i] += gz;
+                }
+            }
+        });
+    }
+
+    /**
+     * Update the position of each particle using its velocity
+     */
+    public void positionUpdate() {
+        executor.forEach(particles.size(), (from, to) -> {
+            advect(particles.x, particles.px, particles.vx, from, to);
+            advect(particles.y, particles.py, particles.vy, from, to);
+            if (particles.z != null) {
+                advect(particles.z, particles.pz, particles.vz, from, to);
+            }
+        });
+    }
+
+    /**
+     * Save and advance one coordinate of the particles from up to to
+     */
+    private void advect(float[] position, float[] previous, float[] velocity, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // x_pre = x
+            previous[i] = position[i];
+            // x = x + dt * v
+            position[i] += velocity[i] * dt;
+        }
+    }
+
+    /**
+     * Apply the viscosity as the impulses to each particle pairs
+     */
+    public void applyViscosity() {
+        forEachParticlePairwise(this::applyViscosity);
+    }
+
+    /**
+     * Apply the viscosity impulses between particle i and its neighbors whose id is greater than i.id
+     */
+    private void applyViscosity(int i) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        float[] vx = particles.vx, vy = particles.vy, vz = particles.vz;
+        // Only care i < j pairs, the tail of the ascending list
+        int first = neighbors.firstAbove(i);
+        kernels.distances(neighbors.indices(), first, neighbors.end(i), i, x, y, z, pairDistance);
+        for (int n = first; n < neighbors.end(i); n++) {
+            int j = neighbors.get(n);
+            float r_ij_norm = pairDistance[n];
+            float q = r_ij_norm / h;
+            if (q < 1 && r_ij_norm != 0) {
+                float r_hat_x = (x[i] - x[j]) / r_ij_norm;
+                float r_hat_y = (y[i] - y[j]) / r_ij_norm;
+                float r_hat_z = z == null ? 0 : (z[i] - z[j]) / r_ij_norm;
+                // Inward radial velocity
+                float u = (vx[i] - vx[j]) * r_hat_x + (vy[i] - vy[j]) * r_hat_y;
+                if (z != null) {
+                    u += (vz[i] - vz[j]) * r_hat_z;
+                }
+                if (u > 0) {
+                    // Linear an quadratic impulses
+                    float I_half = 0.5F * dt * (1 - q) * (delta * u + beta * u * u);
+                    vx[i] -= r_hat_x * I_half;
+                    vy[i] -= r_hat_y * I_half;
+                    vx[j] += r_hat_x * I_half;
+                    vy[j] += r_hat_y * I_half;
+                    if (z != null) {
+                        vz[i] -= r_hat_z * I_half;
+                        vz[j] += r_hat_z * I_half;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adjust the rest length of the spring to simulate the plastic flow when deformation is sufficiently large.
+     */
+    public void adjustSprings() {
+        float cutoffSquared = h * h * CUTOFF_MARGIN;
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        int created = 0;
+        for (int i = 0; i < particles.size(); i++) {
+            for (int n = neighbors.start(i); n < neighbors.end(i); n++) {
+                // Only care i < j pair
+                int j = neighbors.get(n);
+                if (j <= i) continue;
+                float r_x = x[i] - x[j];
+                float r_y = y[i] - y[j];
+                float r_squared = r_x * r_x + r_y * r_y;
+                if (z != null) {
+                    float r_z = z[i] - z[j];
+                    r_squared += r_z * r_z;
+                }
+                if (r_squared > cutoffSquared) continue;
+                float r_ij_norm = (float) Math.sqrt(r_squared);
+                float q = r_ij_norm / h;
+                if (q < 1) {
+                    int s = this.springs.indexOf(i, j);
+                    // Add spring <i,j> with rest length h if there is no spring i j
+                    if (s < 0) {
+                        s = this.springs.add(i, j, h);
+                        created++;
+                    }
+                    // Calculate tolerable deformation
+                    float L_ij = this.springs.restLength[s];
+                    float d = yieldRatio * L_ij;
+                    if (r_ij_norm > L_ij + d) {
+                        // Stretch
+                        this.springs.restLength[s] = L_ij - dt * alpha * (r_ij_norm - L_ij - d);
+                    } else if (r_ij_norm < L_ij - d) {
+                        // Compress
+                        this.springs.restLength[s] = L_ij + dt * alpha * (L_ij - d - r_ij_norm);
+                    }
+                }
+            }
+        }
+        // Remove spring if its rest length is too large
+        int before = this.springs.size();
+        this.springs.removeLongerThan(h);
+        metrics.springsChanged(created, before - this.springs.size(), this.springs.size());
+    }
+
+    /**
+     * Displacement of each end of spring s per unit of the vector between its ends
+     */
+    private float springDisplacement(int s) {
+        float Length = springs.restLength[s];
+        float r_ij_norm = distance(springs.first[s], springs.second[s]);
+        if (r_ij_norm == 0) {
+            return 0;
+        }
+        return 0.5F * dt * dt * k_spring * (1 - Length / h) * (Length - r_ij_norm) / r_ij_norm;
+    }
+
+    /**
+     * Apply spring displacements to simulate elastic behaviour
+     */
+    public void applySpringDisplacements() {
+        if (isColoredSweep()) {
+            applySpringDisplacementsJacobi();
+            return;
+        }
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        int[] first = springs.first, second = springs.second;
+        for (int s = 0; s < springs.size(); s++) {
+            int i = first[s];
+            int j = second[s];
+            float D_half = springDisplacement(s);
+            if (D_half == 0) continue;
+            float D_half_x = (x[i] - x[j]) * D_half;
+            float D_half_y = (y[i] - y[j]) * D_half;
+            x[i] -= D_half_x;
+            y[i] -= D_half_y;
+            x[j] += D_half_x;
+            y[j] += D_half_y;
+            if (z != null) {
+                float D_half_z = (z[i] - z[j]) * D_half;
+                z[i] -= D_half_z;
+                z[j] += D_half_z;
+            }
+        }
+    }
+
+    /**
+     * Parallel variant of the spring phase: all spring displacements are computed from the same positions,
+     * then applied in spring order
+     */
+    private void applySpringDisplacementsJacobi() {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        int[] first = springs.first, second = springs.second;
+        int springCount = springs.size();
+        if (springDx.length < springCount) {
+            springDx = new float[Math.max(springCount, 2 * springDx.length)];
+            springDy = new float[springDx.length];
+            springDz = new float[z != null ? springDx.length : 0];
+        }
+        executor.forEach(springCount, (from, to) -> {
+            for (int s = from; s < to; s++) {
+                int i = first[s];
+                int j = second[s];
+                float D_half = springDisplacement(s);
+                springDx[s] = (x[i] - x[j]) * D_half;
+                springDy[s] = (y[i] - y[j]) * D_half;
+                if (z != null) {
+                    springDz[s] = (z[i] - z[j]) * D_half;
+                }
+            }
+        });
+        for (int s = 0; s < springCount; s++) {
+            x[first[s]] -= springDx[s];
+            y[first[s]] -= springDy[s];
+            x[second[s]] += springDx[s];
+            y[second[s]] += springDy[s];
+            if (z != null) {
+                z[first[s]] -= springDz[s];
+                z[second[s]] += springDz[s];
+            }
+        }
+    }
+
+    /**
+     * Simulate the particle-particle interaction due to pressure
+     */
+    public void doubleDensityRelaxation() {
+        int n = particles.size();
+        if (nearPressure.length < n) {
+            nearPressure = new float[Math.max(n, 2 * nearPressure.length)];
+        }
+        for (int iteration = 0; iteration < relaxationIterations; iteration++) {
+            if (jacobiRelaxation) {
+                relaxJacobi();
+            } else {
+                forEachParticlePairwise(this::relax);
+            }
+        }
+        // The density follows back from the pressure, p = k * (rho - rho_0)
+        float minPressure = Float.POSITIVE_INFINITY;
+        float maxPressure = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minPressure = Math.min(minPressure, particles.pressure[i]);
+            maxPressure = Math.max(maxPressure, particles.pressure[i]);
+        }
+        this.minPressure = n == 0 ? 0 : minPressure;
+        this.maxPressure = n == 0 ? 0 : maxPressure;
+        metrics.setMaxDensity(n == 0 ? 0 : maxPressure / k + rho_0);
+    }
+
+    /**
+     * Lowest pressure of the last relaxation, for coloring the particles
+     */
+    public float getMinPressure() {
+        return minPressure;
+    }
+
+    /**
+     * Highest pressure of the last relaxation
+     */
+    public float getMaxPressure() {
+        return maxPressure;
+    }
+
+    /**
+     * Compute the distances of particle i to its neighbors, then its pressure and near-pressure
+     */
+    private void computePressure(int i) {
+        // Density and near-density, written to the pressure arrays and turned into pressures in place
+        kernels.densities(neighbors.indices(), neighbors.start(i), neighbors.end(i), i, selfDensity ? -1 : i, h,
+                particles.x, particles.y, particles.z, pairDistance, particles.pressure, nearPressure);
+        particles.pressure[i] = k * (particles.pressure[i] - rho_0);
+        nearPressure[i] = k_near * nearPressure[i];
+    }
+
+    /**
+     * Relax particle i against its neighbors: compute its pressure, push the neighbors and move i
+     */
+    private void relax(int i) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        computePressure(i);
+        float pressure = particles.pressure[i];
+        float pressure_near = nearPressure[i];
+        // Displacement, each neighbor is only moved after its distance was used
+        float dx = 0;
+        float dy = 0;
+        float dz = 0;
+        for (int n = neighbors.start(i); n < neighbors.end(i); n++) {
+            int j = neighbors.get(n);
+            if (j == i) continue;
+            float r_ij_norm = pairDistance[n];
+            float q = r_ij_norm / h;
+            if (q < 1 && r_ij_norm != 0) {
+                float r_x = x[j] - x[i];
+                float r_y = y[j] - y[i];
+                // Apply displacements, j is pushed by half of D and i recoils by the recoil fraction of that
+                float D_half = 0.5F * dt * dt * (pressure * (1 - q) + pressure_near * (1 - q) * (1 - q)) / r_ij_norm;
+                float D_recoil = D_half * recoil;
+                x[j] += r_x * D_half;
+                y[j] += r_y * D_half;
+                dx -= r_x * D_recoil;
+                dy -= r_y * D_recoil;
+                if (z != null) {
+                    float r_z = z[j] - z[i];
+                    z[j] += r_z * D_half;
+                    dz -= r_z * D_recoil;
+                }
+            }
+        }
+        x[i] += dx;
+        y[i] += dy;
+        if (z != null) {
+            z[i] += dz;
+        }
+    }
+
+    /**
+     * Jacobi variant of the relaxation: all pressures are computed from the same positions, then each particle
+     * gathers the displacements of its pairs, the recoil fraction of half its own D and half of its neighbor's D as
+     * push, and all particles move at once
+     */
+    private void relaxJacobi() {
+        float[] x = particles.x, y = particles.y, z = particles.z, pressure = particles.pressure;
+        int particleCount = particles.size();
+        if (relaxDx.length < particleCount) {
+            relaxDx = new float[Math.max(particleCount, 2 * relaxDx.length)];
+            relaxDy = new float[relaxDx.length];
+            relaxDz = new float[z != null ? relaxDx.length : 0];
+        }
+        executor.forEach(particleCount, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                computePressure(i);
+            }
+        });
+        // Nothing has moved yet, so the distances of the pressure pass still hold
+        executor.forEach(particleCount, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                float dx = 0;
+                float dy = 0;
+                float dz = 0;
+                for (int n = neighbors.start(i); n < neighbors.end(i); n++) {
+                    int j = neighbors.get(n);
+                    if (j == i) continue;
+                    float r_ij_norm = pairDistance[n];
+                    float q = r_ij_norm / h;
+                    if (q < 1 && r_ij_norm != 0) {
+                        float D_i = dt * dt * (pressure[i] * (1 - q) + nearPressure[i] * (1 - q) * (1 - q));
+                        float D_j = dt * dt * (pressure[j] * (1 - q) + nearPressure[j] * (1 - q) * (1 - q));
+                        float D_half = 0.5F * (recoil * D_i + D_j) / r_ij_norm;
+                        dx -= (x[j] - x[i]) * D_half;
+                        dy -= (y[j] - y[i]) * D_half;
+                        if (z != null) {
+                            dz -= (z[j] - z[i]) * D_half;
+                        }
+                    }
+                }
+                relaxDx[i] = dx;
+                relaxDy[i] = dy;
+                if (z != null) {
+                    relaxDz[i] = dz;
+                }
+            }
+        });
+        executor.forEach(particleCount, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                x[i] += relaxDx[i];
+                y[i] += relaxDy[i];
+                if (z != null) {
+                    z[i] += relaxDz[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolve Particle-Body and Body-Body interactions
+     */
+    public void resolveCollision() {
+        bodies.clear();
+        gatherRigidBodies(bodies);
+        updateSphereGrid();
+        bodyCenter[0] = bodies.x;
+        bodyCenter[1] = bodies.y;
+        bodyCenter[2] = bodies.z;
+        bodyVelocity[0] = bodies.vx;
+        bodyVelocity[1] = bodies.vy;
+        bodyVelocity[2] = bodies.vz;
+        collisionBoxX = boxExtent(0);
+        collisionBoxY = boxExtent(1);
+        collisionBoxZ = particles.z != null ? boxExtent(2) : 0;
+        // Walls and non-movable rigid bodies only change the colliding particle, so particles are independent
+        executor.forEach(particles.size(), particleCollisions);
+
+        // Rigid bodies movable
+        boolean moved = false;
+        for (int b = 0; b < bodies.size(); b++) {
+            if (bodies.movable[b]) {
+                moveRigidBody(b);
+                moved = true;
+            }
+        }
+        if (moved) {
+            scatterRigidBodies(bodies);
+        }
+    }
+
+    /**
+     * Resolve the collisions of particles [from, to) with the walls and the non-movable rigid bodies
+     */
+    private void resolveParticleCollisions(int from, int to) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        int contacts = 0;
+        for (int p = from; p < to; p++) {
+            resolveWallCollision(p, collisionBoxX, collisionBoxY, collisionBoxZ);
+            // Only the spheres listed in the particle's cell can contain it
+            int bucket = sphereGrid.bucket(x[p], y[p], z != null ? z[p] : 0);
+            for (int k = sphereGrid.start(bucket); k < sphereGrid.end(bucket); k++) {
+                int s = sphereGrid.get(k);
+                int b = fixedBodies[s];
+                if (bodies.isInside(b, x[p], y[p], z != null ? z[p] : 0)) {
+                    contacts++;
+                    // Apply collision impulse
+                    addImpulse(b, p, sphereFriction, null);
+                    // Extract the particle
+                    extract(b, p);
+                    // Go on with the later spheres of the cell it was pushed into
+                    int moved = sphereGrid.bucket(x[p], y[p], z != null ? z[p] : 0);
+                    if (moved != bucket) {
+                        bucket = moved;
+                        k = sphereGrid.firstAfter(bucket, s) - 1;
+                    }
+                }
+            }
+        }
+        metrics.addRigidContacts(contacts);
+    }
+
+    /**
+     * Advance movable body b under gravity and the impulses of the particles inside it, keep it in the box and push
+     * the particles out of it
+     */
+    private void moveRigidBody(int b) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        double[][] center = bodyCenter;
+        double[][] velocity = bodyVelocity;
+        float radius = bodies.radius[b];
+        // Advance body using V
+        for (int axis = 0; axis < dimensions; axis++) {
+            velocity[axis][b] += gravityComponent(axis) * dt;
+            center[axis][b] += velocity[axis][b] * dt;
+        }
+        double[] I_net = netImpulse;
+        I_net[0] = 0;
+        I_net[1] = 0;
+        I_net[2] = 0;
+        for (int p = 0; p < particles.size(); p++) {
+            if (bodies.isInside(b, x[p], y[p], z != null ? z[p] : 0)) {
+                // Compute collision impulse
+                addImpulse(b, p, miu_rigid, I_net);
+            }
+        }
+        // Modify V with I_net
+        for (int axis = 0; axis < dimensions; axis++) {
+            velocity[axis][b] += I_net[axis] / bodies.mass[b];
+        }
+
+        // Resolve collisions and contacts between bodies (Only consider collision with walls)
+        boolean hitWall = false;
+        for (int axis = 0; axis < dimensions; axis++) {
+            double edge = lowWallByCenter && axis == 1 ? 0 : radius;
+            if (center[axis][b] - edge < 0) {
+                center[axis][b] = radius;
+                hitWall = true;
+            }
+            if (center[axis][b] + radius > boxExtent(axis)) {
+                center[axis][b] = boxExtent(axis) - radius;
+                hitWall = true;
+            }
+        }
+        if (hitWall) {
+            // The body bounces back with a fifth of its speed
+            for (int axis = 0; axis < dimensions; axis++) {
+                velocity[axis][b] *= WALL_BOUNCE;
+            }
+        }
+
+        // Apply impulse to particles
+        int contacts = 0;
+        for (int p = 0; p < particles.size(); p++) {
+            if (bodies.isInside(b, x[p], y[p], z != null ? z[p] : 0)) {
+                contacts++;
+                // Apply collision impulse
+                addImpulse(b, p, miu_rigid, null);
+                // Extract the particle
+                extract(b, p);
+            }
+        }
+        metrics.addRigidContacts(contacts);
+    }
+
+    /**
+     * Rebin the non-movable spheres if they are not the ones the sphere grid was built from.
+     * They never move, so this only happens when spheres are added or removed.
+     */
+    private void updateSphereGrid() {
+        if (fixedBodies.length < bodies.size()) {
+            fixedBodies = new int[bodies.size()];
+        }
+        int fixedCount = 0;
+        boolean changed = false;
+        for (int b = 0; b < bodies.size(); b++) {
+            if (bodies.movable[b]) continue;
+            int s = fixedCount++;
+            fixedBodies[s] = b;
+            changed = changed || s >= gridSphereCount || gridX[s] != bodies.x[b] || gridY[s] != bodies.y[b]
+                    || gridZ[s] != bodies.z[b] || gridRadius[s] != bodies.radius[b];
+        }
+        if (!changed && fixedCount == gridSphereCount) return;
+        gridSphereCount = fixedCount;
+        gridX = new double[fixedCount];
+        gridY = new double[fixedCount];
+        gridZ = new double[fixedCount];
+        gridRadius = new double[fixedCount];
+        for (int s = 0; s < fixedCount; s++) {
+            int b = fixedBodies[s];
+            gridX[s] = bodies.x[b];
+            gridY[s] = bodies.y[b];
+            gridZ[s] = bodies.z[b];
+            gridRadius[s] = bodies.radius[b];
+        }
+        sphereGrid.build(fixedCount, gridX, gridY, dimensions == 3 ? gridZ : null, gridRadius);
+    }
+
+    /**
+     * Push particle p back into the box [0, boxX] x [0, boxY] x [0, boxZ] and reflect its velocity off the wall it
+     * crossed
+     */
+    private void resolveWallCollision(int p, float boxX, float boxY, float boxZ) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        float[] vx = particles.vx, vy = particles.vy, vz = particles.vz;
+        float n_x = 0;
+        float n_y = 0;
+        float n_z = 0;
+        if (x[p] < 0) {
+            x[p] = 0;
+            n_x = 1;
+            n_y = 0;
+            n_z = 0;
+        }
+        if (y[p] < 0) {
+            y[p] = 0;
+            n_x = 0;
+            n_y = 1;
+            n_z = 0;
+        }
+        if (z != null && z[p] < 0) {
+            z[p] = 0;
+            n_x = 0;
+            n_y = 0;
+            n_z = 1;
+        }
+        if (x[p] > boxX) {
+            x[p] = boxX;
+            n_x = -1;
+            n_y = 0;
+            n_z = 0;
+        }
+        if (y[p] > boxY) {
+            y[p] = boxY;
+            n_x = 0;
+            n_y = -1;
+            n_z = 0;
+        }
+        if (z != null && z[p] > boxZ) {
+            z[p] = boxZ;
+            n_x = 0;
+            n_y = 0;
+            n_z = -1;
+        }
+
+        if (n_x != 0 || n_y != 0 || n_z != 0) {
+            float v_dot_n = vx[p] * n_x + vy[p] * n_y;
+            if (z != null) {
+                v_dot_n += vz[p] * n_z;
+            }
+            float v_normal_x = n_x * v_dot_n;
+            float v_normal_y = n_y * v_dot_n;
+            vx[p] += v_normal_x - (vx[p] - v_normal_x) * miu;
+            vy[p] += v_normal_y - (vy[p] - v_normal_y) * miu;
+            if (z != null) {
+                float v_normal_z = n_z * v_dot_n;
+                vz[p] += v_normal_z - (vz[p] - v_normal_z) * miu;
+            }
+        }
+    }
+
+    /**
+     * Add the collision impulse of particle p against body b with the given friction to total, or to the velocity of
+     * p if total is null
+     */
+    private void addImpulse(int b, int p, float friction, double[] total) {
+        boolean threeD = particles.z != null;
+        double v_bar_x = particles.vx[p] - bodies.vx[b];
+        double v_bar_y = particles.vy[p] - bodies.vy[b];
+        double v_bar_z = threeD ? particles.vz[p] - bodies.vz[b] : 0;
+        double n_x = particles.x[p] - bodies.x[b];
+        double n_y = particles.y[p] - bodies.y[b];
+        double n_z = threeD ? particles.z[p] - bodies.z[b] : 0;
+        double norm = Math.sqrt(n_x * n_x + n_y * n_y + n_z * n_z);
+        if (norm != 0) {
+            n_x /= norm;
+            n_y /= norm;
+            n_z /= norm;
+        }
+        double v_dot_n = v_bar_x * n_x + v_bar_y * n_y + v_bar_z * n_z;
+        double v_normal_x = n_x * v_dot_n;
+        double v_normal_y = n_y * v_dot_n;
+        double v_normal_z = n_z * v_dot_n;
+        double impulse_x = v_normal_x - (v_bar_x - v_normal_x) * friction;
+        double impulse_y = v_normal_y - (v_bar_y - v_normal_y) * friction;
+        double impulse_z = v_normal_z - (v_bar_z - v_normal_z) * friction;
+        if (total != null) {
+            total[0] += impulse_x;
+            total[1] += impulse_y;
+            total[2] += impulse_z;
+        } else {
+            particles.vx[p] += (float) impulse_x;
+            particles.vy[p] += (float) impulse_y;
+            if (threeD) {
+                particles.vz[p] += (float) impulse_z;
+            }
+        }
+    }
+
+    /**
+     * Move particle p onto the surface of body b along its normal
+     */
+    private void extract(int b, int p) {
+        float[] x = particles.x, y = particles.y, z = particles.z;
+        double n_x = x[p] - bodies.x[b];
+        double n_y = y[p] - bodies.y[b];
+        double n_z = z != null ? z[p] - bodies.z[b] : 0;
+        double norm = Math.sqrt(n_x * n_x + n_y * n_y + n_z * n_z);
+        if (norm == 0) {
+            return;
+        }
+        x[p] = (float) (bodies.x[b] + n_x / norm * bodies.radius[b]);
+        y[p] = (float) (bodies.y[b] + n_y / norm * bodies.radius[b]);
+        if (z != null) {
+            z[p] = (float) (bodies.z[b] + n_z / norm * bodies.radius[b]);
+        }
+    }
+
+    /**
+     * Update velocity of particles based on positions.
+     */
+    public void velocityUpdate() {
+        executor.forEach(particles.size(), (from, to) -> {
+            differentiate(particles.vx, particles.x, particles.px, from, to);
+            differentiate(particles.vy, particles.y, particles.py, from, to);
+            if (particles.z != null) {
+                differentiate(particles.vz, particles.z, particles.pz, from, to);
+            }
+        });
+    }
+
+    /**
+     * Set one velocity component of the particles from up to to from their displacement over the step
+     */
+    private void differentiate(float[] velocity, float[] position, float[] previous, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // v = (x - x_pre) / dt
+            velocity[i] = (position[i] - previous[i]) / dt;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, reused across steps so that hot loops do not box or reallocate
+ */
+public class IntList {
+    private static final int INSERTION_SORT_SIZE = 16;
+    private int[] data;
+    private int[] scratch; // Merge buffer of sortAndDeduplicate
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+        this.scratch = new int[0];
+        this.size = 0;
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Keep only the first newSize values
+     */
+    public void truncate(int newSize) {
+        size = newSize;
+    }
+
+    /**
+     * Sort the values in ascending order and drop repeated entries.
+     * Blocks are insertion sorted and then merged through a reused buffer, so sorting does not allocate.
+     */
+    public void sortAndDeduplicate() {
+        sort();
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || data[unique - 1] != data[i]) {
+                data[unique++] = data[i];
+            }
+        }
+        size = unique;
+    }
+
+    private void sort() {
+        for (int from = 0; from < size; from += INSERTION_SORT_SIZE) {
+            insertionSort(data, from, Math.min(from + INSERTION_SORT_SIZE, size));
+        }
+        if (size <= INSERTION_SORT_SIZE) {
+            return;
+        }
+        if (scratch.length < size) {
+            scratch = new int[data.length];
+        }
+        int[] source = data;
+        int[] target = scratch;
+        for (int width = INSERTION_SORT_SIZE; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                merge(source, target, low, Math.min(low + width, size), Math.min(low + 2 * width, size));
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != data) {
+            System.arraycopy(source, 0, data, 0, size);
+        }
+    }
+
+    private static void insertionSort(int[] a, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int value = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > value) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+
+    /**
+     * Merge the sorted ranges source[low, mid) and source[mid, high) into target[low, high)
+     */
+    private static void merge(int[] source, int[] target, int low, int mid, int high) {
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+            if (j >= high || (i < mid && source[i] <= source[j])) {
+                target[k] = source[i++];
+            } else {
+                target[k] = source[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Periodic dump of {@link SolverMetrics} as one CSV row, or one JSON object per line when the file name ends in .json
+ */
+public class MetricsLog implements Closeable {
+    private static final SolverMetrics.Phase[] PHASES = SolverMetrics.Phase.values();
+    private final BufferedWriter writer;
+    private final boolean json;
+
+    public MetricsLog(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path);
+        this.json = path.getFileName().toString().toLowerCase().endsWith(".json");
+        if (!json) {
+            StringBuilder header = new StringBuilder("step,particles,step_ms");
+            for (SolverMetrics.Phase phase : PHASES) {
+                header.append(',').append(phase.label).append("_ms");
+            }
+            header.append(",neighbor_pairs,neighbor_rebuild_rate,live_springs,springs_created,springs_removed,"
+                    + "particles_emitted,particles_removed,rigid_contacts,max_density,frame_substeps,time_step");
+            writer.write(header.toString());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Write the last-step values of the metrics
+     */
+    public void write(long step, SolverMetrics metrics) throws IOException {
+        StringBuilder line = new StringBuilder();
+        if (json) {
+            line.append("{\"step\":").append(step)
+                    .append(",\"particles\":").append(metrics.getParticles())
+                    .append(",\"step_ms\":").append(metrics.getLastStepMillis())
+                    .append(",\"phase_ms\":{");
+            for (SolverMetrics.Phase phase : PHASES) {
+                if (phase.ordinal() > 0) {
+                    line.append(',');
+                }
+                line.append('"').append(phase.label).append("\":").append(metrics.getLastPhaseNanos(phase) / 1e6);
+            }
+            line.append("},\"neighbor_pairs\":").append(metrics.getNeighborPairs())
+                    .append(",\"neighbor_rebuild_rate\":").append(metrics.getNeighborRebuildRate())
+                    .append(",\"live_springs\":").append(metrics.getLiveSprings())
+                    .append(",\"springs_created\":").append(metrics.getSpringsCreated())
+                    .append(",\"springs_removed\":").append(metrics.getSpringsRemoved())
+                    .append(",\"particles_emitted\":").append(metrics.getParticlesEmitted())
+                    .append(",\"particles_removed\":").append(metrics.getParticlesRemoved())
+                    .append(",\"rigid_contacts\":").append(metrics.getRigidContacts())
+                    .append(",\"max_density\":").append(metrics.getMaxDensity())
+                    .append(",\"frame_substeps\":").append(metrics.getFrameSubsteps())
+                    .append(",\"time_step\":").append(metrics.getTimeStep())
+                    .append('}');
+        } else {
+            line.append(step).append(',').append(metrics.getParticles()).append(',').append(metrics.getLastStepMillis());
+            for (SolverMetrics.Phase phase : PHASES) {
+                line.append(',').append(metrics.getLastPhaseNanos(phase) / 1e6);
+            }
+            line.append(',').append(metrics.getNeighborPairs())
+                    .append(',').append(metrics.getNeighborRebuildRate())
+                    .append(',').append(metrics.getLiveSprings())
+                    .append(',').append(metrics.getSpringsCreated())
+                    .append(',').append(metrics.getSpringsRemoved())
+                    .append(',').append(metrics.getParticlesEmitted())
+                    .append(',').append(metrics.getParticlesRemoved())
+                    .append(',').append(metrics.getRigidContacts())
+                    .append(',').append(metrics.getMaxDensity())
+                    .append(',').append(metrics.getFrameSubsteps())
+                    .append(',').append(metrics.getTimeStep());
+        }
+        writer.write(line.toString());
+        writer.newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
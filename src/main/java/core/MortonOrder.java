@@ -0,0 +1,104 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Permutation that sorts particles along the Morton (Z-order) curve of the grid cells they lie in.
+ * Particles that are close in space end up close in memory, so the pairwise phases mostly touch cached data.
+ * Cells are counted from the lowest particle; beyond 2^15 (2D) or 2^10 (3D) cells per axis the curve is clamped.
+ */
+public class MortonOrder {
+    private final int dim; // 2 or 3
+    private final float cellSize;
+    private long[] keys; // Scratch sort keys, Morton code in the high half and particle index in the low half
+    private int[] order; // New index -> old index
+    private int[] rank; // Old index -> new index
+
+    public MortonOrder(int dim, float cellSize) {
+        if (dim != 2 && dim != 3) {
+            throw new IllegalArgumentException("Dimension must be 2 or 3");
+        }
+        this.dim = dim;
+        this.cellSize = cellSize;
+        this.keys = new long[0];
+        this.order = new int[0];
+        this.rank = new int[0];
+    }
+
+    /**
+     * Sort the first n particles given by the coordinate arrays. z is ignored in 2D and may be null.
+     * Particles of the same cell keep their relative order.
+     */
+    public void build(int n, float[] x, float[] y, float[] z) {
+        if (keys.length < n) {
+            keys = new long[n];
+            order = new int[n];
+            rank = new int[n];
+        }
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            if (dim == 3) {
+                minZ = Math.min(minZ, z[i]);
+            }
+        }
+        int limit = dim == 2 ? 0x7FFF : 0x3FF; // Codes stay below 2^31, so the keys stay positive
+        for (int i = 0; i < n; i++) {
+            int cx = cell(x[i], minX, limit);
+            int cy = cell(y[i], minY, limit);
+            long code = dim == 2 ? spread2(cx) | spread2(cy) << 1
+                    : spread3(cx) | spread3(cy) << 1 | spread3(cell(z[i], minZ, limit)) << 2;
+            keys[i] = code << 32 | i;
+        }
+        Arrays.sort(keys, 0, n);
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            order[k] = i;
+            rank[i] = k;
+        }
+    }
+
+    /**
+     * Old index of the particle that moves to index k
+     */
+    public int[] order() {
+        return order;
+    }
+
+    /**
+     * New index of the particle at old index i
+     */
+    public int[] rank() {
+        return rank;
+    }
+
+    private int cell(float coordinate, float min, int limit) {
+        // NaN positions fall into cell 0
+        return Math.max(0, Math.min(limit, (int) ((coordinate - min) / cellSize)));
+    }
+
+    /**
+     * Insert a zero bit after each of the low 16 bits
+     */
+    private static long spread2(int v) {
+        long b = v & 0xFFFFL;
+        b = (b | b << 8) & 0x00FF00FFL;
+        b = (b | b << 4) & 0x0F0F0F0FL;
+        b = (b | b << 2) & 0x33333333L;
+        b = (b | b << 1) & 0x55555555L;
+        return b;
+    }
+
+    /**
+     * Insert two zero bits after each of the low 10 bits
+     */
+    private static long spread3(int v) {
+        long b = v & 0x3FFL;
+        b = (b | b << 16) & 0x030000FFL;
+        b = (b | b << 8) & 0x0300F00FL;
+        b = (b | b << 4) & 0x030C30C3L;
+        b = (b | b << 2) & 0x09249249L;
+        return b;
+    }
+}
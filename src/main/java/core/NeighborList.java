@@ -0,0 +1,204 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Neighbor lists of all particles in compressed sparse row layout:
+ * the neighbors of particle i are indices[offsets[i] .. offsets[i + 1]), in ascending order.
+ * A particle is always listed as its own neighbor.
+ * The positions of the last build are kept, so that lists built with a radius of h + skin can be reused
+ * Verlet-style until some particle has moved by more than skin / 2.
+ */
+public class NeighborList {
+    private final IntList candidates;
+    private IntList[] chunkCandidates = new IntList[0]; // Scratch of the parallel build, one per executor chunk
+    private int[] indices;
+    private int[] offsets;
+    private float[] builtX = new float[0]; // Positions of the last build
+    private float[] builtY = new float[0];
+    private float[] builtZ = new float[0];
+    private int builtCount = -1; // Particle count of the last build, -1 if the lists are invalid
+
+    public NeighborList() {
+        this.candidates = new IntList(64);
+        this.indices = new int[1024];
+        this.offsets = new int[1];
+    }
+
+    /**
+     * Whether the lists of the first n particles must be rebuilt: the particle count changed, the lists were
+     * invalidated, or some particle has moved by more than limit since the last build
+     */
+    public boolean isStale(int n, float[] x, float[] y, float[] z, float limit) {
+        if (n != builtCount) {
+            return true;
+        }
+        float limitSquared = limit * limit;
+        for (int i = 0; i < n; i++) {
+            float dx = x[i] - builtX[i];
+            float dy = y[i] - builtY[i];
+            float dz = z != null ? z[i] - builtZ[i] : 0;
+            if (dx * dx + dy * dy + dz * dz > limitSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Force a rebuild on the next isStale check
+     */
+    public void invalidate() {
+        builtCount = -1;
+    }
+
+    /**
+     * Rebuild the lists of the first n particles from a grid already built over the same coordinates.
+     * z is ignored for 2D grids and may be null.
+     */
+    public void build(SpatialGrid grid, int n, float[] x, float[] y, float[] z, float radius) {
+        if (offsets.length < n + 1) {
+            offsets = new int[Math.max(n + 1, 2 * offsets.length)];
+        }
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = size;
+            query(grid, i, x, y, z, radius, candidates);
+            if (size + candidates.size() > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(size + candidates.size(), 2 * indices.length));
+            }
+            for (int c = 0; c < candidates.size(); c++) {
+                indices[size++] = candidates.get(c);
+            }
+        }
+        offsets[n] = size;
+        recordPositions(n, x, y, z);
+    }
+
+    /**
+     * Rebuild the lists like {@link #build}, counting and then filling the lists of particle ranges in parallel
+     */
+    public void build(SpatialGrid grid, int n, float[] x, float[] y, float[] z, float radius, ParallelExecutor executor) {
+        if (!executor.isParallel()) {
+            build(grid, n, x, y, z, radius);
+            return;
+        }
+        if (offsets.length < n + 1) {
+            offsets = new int[Math.max(n + 1, 2 * offsets.length)];
+        }
+        int chunks = executor.chunkCount(n);
+        if (chunkCandidates.length < chunks) {
+            int built = chunkCandidates.length;
+            chunkCandidates = Arrays.copyOf(chunkCandidates, chunks);
+            for (int c = built; c < chunks; c++) {
+                chunkCandidates[c] = new IntList(64);
+            }
+        }
+        IntList[] scratch = chunkCandidates;
+        // Count the neighbors of each particle, shifted by one for the prefix sum
+        executor.forEachChunk(n, (chunk, from, to) -> {
+            IntList found = scratch[chunk];
+            for (int i = from; i < to; i++) {
+                query(grid, i, x, y, z, radius, found);
+                offsets[i + 1] = found.size();
+            }
+        });
+        offsets[0] = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        if (offsets[n] > indices.length) {
+            indices = new int[Math.max(offsets[n], 2 * indices.length)];
+        }
+        executor.forEachChunk(n, (chunk, from, to) -> {
+            IntList found = scratch[chunk];
+            for (int i = from; i < to; i++) {
+                query(grid, i, x, y, z, radius, found);
+                for (int c = 0; c < found.size(); c++) {
+                    indices[offsets[i] + c] = found.get(c);
+                }
+            }
+        });
+        recordPositions(n, x, y, z);
+    }
+
+    /**
+     * Number of entries of all lists of the last build, each particle counting itself
+     */
+    public int pairCount() {
+        return builtCount < 0 ? 0 : offsets[builtCount];
+    }
+
+    public int start(int i) {
+        return offsets[i];
+    }
+
+    public int end(int i) {
+        return offsets[i + 1];
+    }
+
+    public int get(int k) {
+        return indices[k];
+    }
+
+    /**
+     * Backing array of all lists, for kernels that walk a list in bulk; replaced by the next build
+     */
+    public int[] indices() {
+        return indices;
+    }
+
+    /**
+     * First entry of the list of particle i that is greater than i, or end(i) if there is none
+     */
+    public int firstAbove(int i) {
+        int low = offsets[i];
+        int high = offsets[i + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (indices[middle] <= i) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void recordPositions(int n, float[] x, float[] y, float[] z) {
+        if (builtX.length < n) {
+            int capacity = Math.max(n, 2 * builtX.length);
+            builtX = new float[capacity];
+            builtY = new float[capacity];
+            builtZ = new float[capacity];
+        }
+        System.arraycopy(x, 0, builtX, 0, n);
+        System.arraycopy(y, 0, builtY, 0, n);
+        if (z != null) {
+            System.arraycopy(z, 0, builtZ, 0, n);
+        }
+        builtCount = n;
+    }
+
+    /**
+     * Collect the neighbors of particle i within radius into out, in ascending order.
+     * The candidates are filtered by distance first, so only the few actual neighbors need sorting.
+     */
+    private static void query(SpatialGrid grid, int i, float[] x, float[] y, float[] z, float radius, IntList out) {
+        float zi = z != null ? z[i] : 0;
+        grid.collect(x[i], y[i], zi, out);
+        float radiusSquared = radius * radius;
+        int kept = 0;
+        for (int c = 0; c < out.size(); c++) {
+            int j = out.get(c);
+            float dx = x[j] - x[i];
+            float dy = y[j] - y[i];
+            float dz = z != null ? z[j] - zi : 0;
+            if (dx * dx + dy * dy + dz * dz < radiusSquared) {
+                out.set(kept++, j);
+            }
+        }
+        out.truncate(kept);
+        out.sortAndDeduplicate();
+    }
+}
@@ -0,0 +1,53 @@
+package core;
+
+/**
+ * Backend of the pairwise kernels: computes the distances and the densities between a particle and a run of its
+ * neighbors. The density, pressure and viscosity loops of the solvers spend most of their time here, so the backend
+ * is chosen once at startup: the SIMD one of the vector build when the JVM runs with the jdk.incubator.vector module,
+ * the scalar one otherwise or when the system property fluid.simd is false.
+ * Each distance is the correctly rounded square root of the same sum in the same order and the densities are summed
+ * in the fixed order given at {@link #densities}, so all backends give bit-identical results.
+ */
+public abstract class PairKernels {
+    /**
+     * Partial sums of the densities, one per lane of an 8-float vector
+     */
+    public static final int DENSITY_LANES = 8;
+
+    /**
+     * Write the distance between particle i and particle indices[n] to distance[n] for every n in [from, to).
+     * z is ignored and may be null in 2D.
+     */
+    public abstract void distances(int[] indices, int from, int to, int i, float[] x, float[] y, float[] z, float[] distance);
+
+    /**
+     * Write the distances like {@link #distances}, then the density and near-density of particle i, the sums of
+     * (1 - q)^2 and (1 - q)^3 over its neighbors with q = distance / h below 1, to rho[i] and rhoNear[i].
+     * Neighbor excluded is left out of the sums, -1 leaves out none.
+     * <p>
+     * The run is summed in whole blocks of DENSITY_LANES neighbors, neighbor from + b * DENSITY_LANES + l going to
+     * partial sum l; the partial sums are added up in lane order, then the neighbors after the last whole block in
+     * turn.
+     */
+    public abstract void densities(int[] indices, int from, int to, int i, int excluded, float h, float[] x, float[] y,
+                                   float[] z, float[] distance, float[] rho, float[] rhoNear);
+
+    public abstract String name();
+
+    /**
+     * The backend selected at startup
+     */
+    public static final PairKernels SELECTED = select();
+
+    private static PairKernels select() {
+        if (Boolean.parseBoolean(System.getProperty("fluid.simd", "true"))) {
+            try {
+                return (PairKernels) Class.forName("core.VectorPairKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not the vector build, the JVM runs without --add-modules jdk.incubator.vector or the processor has
+                // no 256-bit vectors
+            }
+        }
+        return new ScalarPairKernels();
+    }
+}
@@ -0,0 +1,160 @@
+package core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs index ranges of a solver phase on a fork/join pool with a fixed number of threads.
+ * With a single thread every range runs inline on the caller, so the serial solver keeps its original order.
+ */
+public class ParallelExecutor {
+    private static final int MIN_GRAIN = 256; // Smallest range worth handing to another thread
+    private static final int CHUNKS_PER_THREAD = 4;
+    private final int threads;
+    private final ForkJoinPool pool; // null in serial mode
+
+    public ParallelExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threads = threads;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Task over the index range [from, to)
+     */
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Task over the index range [from, to), the given chunk of a {@link #forEachChunk} call
+     */
+    public interface ChunkTask {
+        void run(int chunk, int from, int to);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Run the task over [0, n), split into ranges that may run concurrently
+     */
+    public void forEach(int n, RangeTask task) {
+        forEach(n, MIN_GRAIN, task);
+    }
+
+    /**
+     * Run the task over [0, n) with ranges of at least minGrain indices, for items that are each expensive
+     */
+    public void forEach(int n, int minGrain, RangeTask task) {
+        if (n <= 0) {
+            return;
+        }
+        int grain = grain(n, minGrain);
+        if (pool == null || n <= grain) {
+            task.run(0, n);
+            return;
+        }
+        pool.invoke(new RangeAction(task, 0, n, grain));
+    }
+
+    /**
+     * Number of chunks {@link #forEachChunk} splits [0, n) into
+     */
+    public int chunkCount(int n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int grain = grain(n, MIN_GRAIN);
+        return (n + grain - 1) / grain;
+    }
+
+    /**
+     * Run the task over [0, n) in chunkCount(n) numbered ranges, of which only ranges of different chunks run
+     * concurrently; a task can thus keep scratch per chunk. In serial mode the whole range runs as chunk 0.
+     */
+    public void forEachChunk(int n, ChunkTask task) {
+        int chunks = chunkCount(n);
+        if (chunks == 0) {
+            return;
+        }
+        if (pool == null || chunks == 1) {
+            task.run(0, 0, n);
+            return;
+        }
+        pool.invoke(new ChunkAction(task, n, grain(n, MIN_GRAIN), 0, chunks));
+    }
+
+    private int grain(int n, int minGrain) {
+        return Math.max(minGrain, (n + threads * CHUNKS_PER_THREAD - 1) / (threads * CHUNKS_PER_THREAD));
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final RangeTask task;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RangeAction(RangeTask task, int from, int to, int grain) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(task, from, middle, grain), new RangeAction(task, middle, to, grain));
+        }
+    }
+
+    private static class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ChunkTask task;
+        private final int n;
+        private final int grain;
+        private final int firstChunk;
+        private final int endChunk;
+
+        ChunkAction(ChunkTask task, int n, int grain, int firstChunk, int endChunk) {
+            this.task = task;
+            this.n = n;
+            this.grain = grain;
+            this.firstChunk = firstChunk;
+            this.endChunk = endChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (endChunk - firstChunk == 1) {
+                task.run(firstChunk, firstChunk * grain, Math.min(n, (firstChunk + 1) * grain));
+                return;
+            }
+            int middle = (firstChunk + endChunk) >>> 1;
+            invokeAll(new ChunkAction(task, n, grain, firstChunk, middle),
+                    new ChunkAction(task, n, grain, middle, endChunk));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage of the fluid particles of the 2D and 3D solvers.
+ * Slot i of every array belongs to the particle with id i; the arrays grow by doubling their capacity.
+ * In 2D the z arrays are null.
+ */
+public class ParticleArrays {
+    private static final int INITIAL_CAPACITY = 64;
+    public final int dimensions; // 2 or 3
+    public float[] x; // Position
+    public float[] y;
+    public float[] z;
+    public float[] px; // Previous position
+    public float[] py;
+    public float[] pz;
+    public float[] vx; // Velocity
+    public float[] vy;
+    public float[] vz;
+    public float[] pressure;
+    public float[] age; // Simulated time since the particle was added
+    private float[] scratch; // Spare array of the same capacity, see permute
+    private int size;
+
+    public ParticleArrays(int dimensions) {
+        if (dimensions != 2 && dimensions != 3) {
+            throw new IllegalArgumentException("Particles must have 2 or 3 dimensions");
+        }
+        this.dimensions = dimensions;
+        this.x = new float[INITIAL_CAPACITY];
+        this.y = new float[INITIAL_CAPACITY];
+        this.z = dimensions == 3 ? new float[INITIAL_CAPACITY] : null;
+        this.px = new float[INITIAL_CAPACITY];
+        this.py = new float[INITIAL_CAPACITY];
+        this.pz = dimensions == 3 ? new float[INITIAL_CAPACITY] : null;
+        this.vx = new float[INITIAL_CAPACITY];
+        this.vy = new float[INITIAL_CAPACITY];
+        this.vz = dimensions == 3 ? new float[INITIAL_CAPACITY] : null;
+        this.pressure = new float[INITIAL_CAPACITY];
+        this.age = new float[INITIAL_CAPACITY];
+        this.scratch = new float[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Append a particle and return its id, z and vz are ignored in 2D
+     */
+    public int add(float x, float y, float z, float vx, float vy, float vz) {
+        if (size == this.x.length) {
+            grow();
+        }
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.px[i] = 0;
+        this.py[i] = 0;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        if (dimensions == 3) {
+            this.z[i] = z;
+            this.pz[i] = 0;
+            this.vz[i] = vz;
+        }
+        this.pressure[i] = 0;
+        this.age[i] = 0;
+        return i;
+    }
+
+    /**
+     * Move the particle at index order[k] to index k, for every k below size
+     */
+    public void permute(int[] order) {
+        x = permuted(x, order);
+        y = permuted(y, order);
+        z = permuted(z, order);
+        px = permuted(px, order);
+        py = permuted(py, order);
+        pz = permuted(pz, order);
+        vx = permuted(vx, order);
+        vy = permuted(vy, order);
+        vz = permuted(vz, order);
+        pressure = permuted(pressure, order);
+        age = permuted(age, order);
+    }
+
+    private float[] permuted(float[] values, int[] order) {
+        if (values == null) {
+            return null;
+        }
+        float[] result = scratch;
+        for (int k = 0; k < size; k++) {
+            result[k] = values[order[k]];
+        }
+        scratch = values;
+        return result;
+    }
+
+    /**
+     * Move the particle at index i to index rank[i] and drop the particles whose rank is -1.
+     * The ranks must number the remaining particles in their current order, so the particles only move down.
+     */
+    public void compact(int[] rank) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int k = rank[i];
+            if (k < 0) continue;
+            x[k] = x[i];
+            y[k] = y[i];
+            px[k] = px[i];
+            py[k] = py[i];
+            vx[k] = vx[i];
+            vy[k] = vy[i];
+            if (dimensions == 3) {
+                z[k] = z[i];
+                pz[k] = pz[i];
+                vz[k] = vz[i];
+            }
+            pressure[k] = pressure[i];
+            age[k] = age[i];
+            kept++;
+        }
+        size = kept;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Make room for at least capacity particles, so that adding them does not grow the arrays again
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            resize(capacity);
+        }
+    }
+
+    private void grow() {
+        resize(2 * x.length);
+    }
+
+    private void resize(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        if (dimensions == 3) {
+            z = Arrays.copyOf(z, capacity);
+            pz = Arrays.copyOf(pz, capacity);
+            vz = Arrays.copyOf(vz, capacity);
+        }
+        pressure = Arrays.copyOf(pressure, capacity);
+        age = Arrays.copyOf(age, capacity);
+        scratch = new float[capacity];
+    }
+}
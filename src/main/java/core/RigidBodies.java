@@ -0,0 +1,68 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Rigid spheres of a {@link FluidSolver} as flat arrays, filled from the sphere objects of the 2D or 3D front end
+ * before every collision phase. In 2D the z coordinates are 0.
+ */
+public class RigidBodies {
+    public double[] x = new double[0]; // Center
+    public double[] y = new double[0];
+    public double[] z = new double[0];
+    public double[] vx = new double[0]; // Velocity, 0 for non-movable spheres
+    public double[] vy = new double[0];
+    public double[] vz = new double[0];
+    public float[] radius = new float[0];
+    public float[] mass = new float[0];
+    public boolean[] movable = new boolean[0];
+    private int size = 0;
+
+    /**
+     * Append a sphere and return its index
+     */
+    public int add(double x, double y, double z, double vx, double vy, double vz, float radius, float mass,
+                   boolean movable) {
+        if (size == this.x.length) {
+            int capacity = Math.max(4, 2 * size);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.vx = Arrays.copyOf(this.vx, capacity);
+            this.vy = Arrays.copyOf(this.vy, capacity);
+            this.vz = Arrays.copyOf(this.vz, capacity);
+            this.radius = Arrays.copyOf(this.radius, capacity);
+            this.mass = Arrays.copyOf(this.mass, capacity);
+            this.movable = Arrays.copyOf(this.movable, capacity);
+        }
+        int b = size++;
+        this.x[b] = x;
+        this.y[b] = y;
+        this.z[b] = z;
+        this.vx[b] = vx;
+        this.vy[b] = vy;
+        this.vz[b] = vz;
+        this.radius[b] = radius;
+        this.mass[b] = mass;
+        this.movable[b] = movable;
+        return b;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Whether a particle at the given position is inside sphere b or not
+     */
+    public boolean isInside(int b, double px, double py, double pz) {
+        double dx = x[b] - px;
+        double dy = y[b] - py;
+        double dz = z[b] - pz;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz) < radius[b];
+    }
+}
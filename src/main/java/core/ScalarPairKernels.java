@@ -0,0 +1,71 @@
+package core;
+
+/**
+ * Plain Java pairwise kernels, available on every JVM
+ */
+public class ScalarPairKernels extends PairKernels {
+
+    @Override
+    public void distances(int[] indices, int from, int to, int i, float[] x, float[] y, float[] z, float[] distance) {
+        float x_i = x[i];
+        float y_i = y[i];
+        if (z == null) {
+            for (int n = from; n < to; n++) {
+                int j = indices[n];
+                float r_x = x[j] - x_i;
+                float r_y = y[j] - y_i;
+                distance[n] = (float) Math.sqrt(r_x * r_x + r_y * r_y);
+            }
+        } else {
+            float z_i = z[i];
+            for (int n = from; n < to; n++) {
+                int j = indices[n];
+                float r_x = x[j] - x_i;
+                float r_y = y[j] - y_i;
+                float r_z = z[j] - z_i;
+                distance[n] = (float) Math.sqrt(r_x * r_x + r_y * r_y + r_z * r_z);
+            }
+        }
+    }
+
+    @Override
+    public void densities(int[] indices, int from, int to, int i, int excluded, float h, float[] x, float[] y,
+                          float[] z, float[] distance, float[] rho, float[] rhoNear) {
+        distances(indices, from, to, i, x, y, z, distance);
+        int blocksEnd = from + (to - from) / DENSITY_LANES * DENSITY_LANES;
+        float rho_i = 0;
+        float rhoNear_i = 0;
+        // One partial sum per lane, striding over the whole blocks
+        for (int lane = 0; lane < DENSITY_LANES; lane++) {
+            float partialRho = 0;
+            float partialRhoNear = 0;
+            for (int n = from + lane; n < blocksEnd; n += DENSITY_LANES) {
+                float w = weight(indices[n], excluded, distance[n], h);
+                partialRho += w * w;
+                partialRhoNear += w * w * w;
+            }
+            rho_i += partialRho;
+            rhoNear_i += partialRhoNear;
+        }
+        for (int n = blocksEnd; n < to; n++) {
+            float w = weight(indices[n], excluded, distance[n], h);
+            rho_i += w * w;
+            rhoNear_i += w * w * w;
+        }
+        rho[i] = rho_i;
+        rhoNear[i] = rhoNear_i;
+    }
+
+    /**
+     * 1 - q of neighbor j, or 0 if it is out of range or excluded
+     */
+    static float weight(int j, int excluded, float distance, float h) {
+        float q = distance / h;
+        return q < 1 && j != excluded ? 1 - q : 0;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,137 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Line-by-line reader of the scene files of the 2D and 3D loaders.
+ * Every line holds a keyword followed by its arguments, separated by whitespace; blank lines and everything after a
+ * '#' are skipped. Errors name the file and line they were found on.
+ */
+public class SceneReader implements Closeable {
+    private final BufferedReader reader;
+    private final String name; // File or resource name for the error messages
+    private int lineNumber = 0;
+    private String[] tokens = new String[0]; // Keyword and arguments of the current line
+
+    public SceneReader(Reader reader, String name) {
+        this.reader = new BufferedReader(reader);
+        this.name = name;
+    }
+
+    public static SceneReader open(Path path) throws IOException {
+        return new SceneReader(Files.newBufferedReader(path, StandardCharsets.UTF_8), path.toString());
+    }
+
+    /**
+     * Open a scene file bundled on the class path
+     */
+    public static SceneReader openResource(String resource) throws IOException {
+        InputStream inputStream = SceneReader.class.getClassLoader().getResourceAsStream(resource);
+        if (inputStream == null) {
+            throw new IOException("Scene resource not found: " + resource);
+        }
+        return new SceneReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), resource);
+    }
+
+    /**
+     * Move to the next non-blank line, return false at the end of the file
+     */
+    public boolean next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                tokens = line.split("\\s+");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String keyword() {
+        return tokens[0];
+    }
+
+    public int argumentCount() {
+        return tokens.length - 1;
+    }
+
+    /**
+     * Fail unless the current line has exactly count arguments
+     */
+    public void expectArguments(int count) throws IOException {
+        if (argumentCount() != count) {
+            throw error(String.format("%s takes %d arguments, found %d", keyword(), count, argumentCount()));
+        }
+    }
+
+    /**
+     * Argument at index, counted from 0 after the keyword
+     */
+    public String word(int index) {
+        return tokens[index + 1];
+    }
+
+    public float number(int index) throws IOException {
+        try {
+            float value = Float.parseFloat(word(index));
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw error("not a number: " + word(index));
+        }
+    }
+
+    public long integer(int index) throws IOException {
+        try {
+            return Long.parseLong(word(index));
+        } catch (NumberFormatException e) {
+            throw error("not an integer: " + word(index));
+        }
+    }
+
+    /**
+     * Error about the current line
+     */
+    public IOException error(String message) {
+        return new IOException(String.format("%s:%d: %s", name, lineNumber, message));
+    }
+
+    /**
+     * Number of lattice points min + i * spacing, i >= 0, that lie below max
+     */
+    public static int latticePoints(float min, float max, float spacing) {
+        if (!(max > min)) {
+            return 0;
+        }
+        int count = (int) Math.ceil((max - min) / spacing);
+        // Agree with the rounding of min + i * spacing at the upper end
+        while (count > 0 && min + (count - 1) * spacing >= max) {
+            count--;
+        }
+        while (min + count * spacing < max) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
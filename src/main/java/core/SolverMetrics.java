@@ -0,0 +1,250 @@
+package core;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters reported by a solver while it steps.
+ * The solver writes them from the simulation thread; readers such as JMX or the GUI overlay see them without locking,
+ * so a value read during a step may mix two steps.
+ */
+public class SolverMetrics implements SolverMetricsMBean {
+
+    /**
+     * Phases of one simulation step, in execution order
+     */
+    public enum Phase {
+        EMISSION("emission"),
+        NEIGHBORS("neighbors"),
+        GRAVITY("gravity"),
+        VISCOSITY("viscosity"),
+        POSITION_UPDATE("position_update"),
+        SPRING_ADJUSTMENT("spring_adjustment"),
+        SPRING_DISPLACEMENT("spring_displacement"),
+        RELAXATION("relaxation"),
+        COLLISION("collision"),
+        VELOCITY_UPDATE("velocity_update");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private final long[] lastPhaseNanos = new long[PHASES.length];
+    private final long[] totalPhaseNanos = new long[PHASES.length];
+    private final LongAdder stepRigidContacts = new LongAdder(); // Contacts of the running step, added by any thread
+    private long steps;
+    private long neighborRebuilds;
+    private long lastStepNanos;
+    private int particles;
+    private long neighborPairs;
+    private int liveSprings;
+    private int springsCreated;
+    private int springsRemoved;
+    private int particlesEmitted;
+    private int particlesRemoved;
+    private long rigidContacts;
+    private float maxDensity;
+    private int frameSubsteps;
+    private float timeStep;
+
+    /**
+     * Record that the phase started at the given System.nanoTime() has ended, and return the current time
+     */
+    public long phaseDone(Phase phase, long start) {
+        long now = System.nanoTime();
+        lastPhaseNanos[phase.ordinal()] = now - start;
+        totalPhaseNanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    /**
+     * Record a neighbor search holding the given number of pairs, including each particle with itself
+     */
+    public void neighborsFound(long pairs, boolean rebuilt) {
+        this.neighborPairs = pairs;
+        if (rebuilt) {
+            this.neighborRebuilds++;
+        }
+    }
+
+    public void springsChanged(int created, int removed, int live) {
+        this.springsCreated = created;
+        this.springsRemoved = removed;
+        this.liveSprings = live;
+    }
+
+    /**
+     * Record the particles added by the emitters and removed by the sinks and the lifetime cap in the running step
+     */
+    public void particlesExchanged(int emitted, int removed) {
+        this.particlesEmitted = emitted;
+        this.particlesRemoved = removed;
+    }
+
+    /**
+     * Count particle-sphere contacts of the running step; safe to call from the worker threads
+     */
+    public void addRigidContacts(int contacts) {
+        if (contacts > 0) {
+            stepRigidContacts.add(contacts);
+        }
+    }
+
+    public void setMaxDensity(float maxDensity) {
+        this.maxDensity = maxDensity;
+    }
+
+    /**
+     * Close the step started at the given System.nanoTime()
+     */
+    public void stepDone(int particles, long start) {
+        this.lastStepNanos = System.nanoTime() - start;
+        this.particles = particles;
+        this.rigidContacts = stepRigidContacts.sumThenReset();
+        this.steps++;
+    }
+
+    /**
+     * Record that a frame was advanced in the given number of steps, the last one of the given length
+     */
+    public void frameDone(int substeps, float timeStep) {
+        this.frameSubsteps = substeps;
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Register this object with the platform MBean server as fluid:type=SolverMetrics,name=&lt;name&gt;
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("fluid:type=SolverMetrics,name=" + ObjectName.quote(name));
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long getSteps() {
+        return steps;
+    }
+
+    @Override
+    public int getParticles() {
+        return particles;
+    }
+
+    @Override
+    public String[] getPhaseNames() {
+        String[] names = new String[PHASES.length];
+        for (Phase phase : PHASES) {
+            names[phase.ordinal()] = phase.label;
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getLastPhaseNanos() {
+        return lastPhaseNanos.clone();
+    }
+
+    public long getLastPhaseNanos(Phase phase) {
+        return lastPhaseNanos[phase.ordinal()];
+    }
+
+    @Override
+    public double[] getAveragePhaseMillis() {
+        double[] average = new double[PHASES.length];
+        for (int p = 0; p < PHASES.length; p++) {
+            average[p] = steps == 0 ? 0 : totalPhaseNanos[p] / 1e6 / steps;
+        }
+        return average;
+    }
+
+    @Override
+    public double getLastStepMillis() {
+        return lastStepNanos / 1e6;
+    }
+
+    @Override
+    public long getNeighborPairs() {
+        return neighborPairs;
+    }
+
+    /**
+     * Fraction of the steps since the last reset that rebuilt the neighbor lists
+     */
+    @Override
+    public double getNeighborRebuildRate() {
+        return steps == 0 ? 0 : (double) neighborRebuilds / steps;
+    }
+
+    @Override
+    public int getLiveSprings() {
+        return liveSprings;
+    }
+
+    @Override
+    public int getSpringsCreated() {
+        return springsCreated;
+    }
+
+    @Override
+    public int getSpringsRemoved() {
+        return springsRemoved;
+    }
+
+    @Override
+    public int getParticlesEmitted() {
+        return particlesEmitted;
+    }
+
+    @Override
+    public int getParticlesRemoved() {
+        return particlesRemoved;
+    }
+
+    @Override
+    public long getRigidContacts() {
+        return rigidContacts;
+    }
+
+    @Override
+    public float getMaxDensity() {
+        return maxDensity;
+    }
+
+    @Override
+    public int getFrameSubsteps() {
+        return frameSubsteps;
+    }
+
+    @Override
+    public float getTimeStep() {
+        return timeStep;
+    }
+
+    @Override
+    public String getPairKernels() {
+        return PairKernels.SELECTED.name();
+    }
+
+    /**
+     * Restart the averages and the rebuild rate; the last-step values are kept
+     */
+    @Override
+    public void reset() {
+        Arrays.fill(totalPhaseNanos, 0);
+        this.steps = 0;
+        this.neighborRebuilds = 0;
+    }
+}
@@ -0,0 +1,66 @@
+package core;
+
+/**
+ * JMX view of {@link SolverMetrics}. Per-step values refer to the last completed step.
+ */
+public interface SolverMetricsMBean {
+
+    long getSteps();
+
+    int getParticles();
+
+    String[] getPhaseNames();
+
+    /**
+     * Time spent in each phase during the last step, in nanoseconds, in the order of getPhaseNames
+     */
+    long[] getLastPhaseNanos();
+
+    /**
+     * Average time spent in each phase per step since the last reset, in milliseconds
+     */
+    double[] getAveragePhaseMillis();
+
+    double getLastStepMillis();
+
+    long getNeighborPairs();
+
+    double getNeighborRebuildRate();
+
+    int getLiveSprings();
+
+    int getSpringsCreated();
+
+    int getSpringsRemoved();
+
+    /**
+     * Particles added by the emitters in the last step
+     */
+    int getParticlesEmitted();
+
+    /**
+     * Particles removed by the sinks and the lifetime cap in the last step
+     */
+    int getParticlesRemoved();
+
+    long getRigidContacts();
+
+    float getMaxDensity();
+
+    /**
+     * Steps taken to advance the last frame
+     */
+    int getFrameSubsteps();
+
+    /**
+     * Length of the last step taken by a frame
+     */
+    float getTimeStep();
+
+    /**
+     * Backend of the pairwise kernels, scalar or simd-&lt;bits&gt;
+     */
+    String getPairKernels();
+
+    void reset();
+}
@@ -0,0 +1,202 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Uniform spatial hashing grid used for the neighbor search of both solvers.
+ * The grid is rebuilt once per simulation step with a counting sort of the particles over their hashed cells,
+ * so building costs O(N) and a query only visits the 9 (2D) or 27 (3D) cells around a point.
+ */
+public class SpatialGrid {
+    private static final int PRIME_X = 73856093;
+    private static final int PRIME_Y = 19349663;
+    private static final int PRIME_Z = 83492791;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private final int dim; // 2 or 3
+    private final float cellSize; // Cell edge length, normally the interaction range h
+    private int mask; // Hash table size - 1
+    private int[] bucketStart; // Offset of each bucket in sortedParticles, one extra entry as the end marker
+    private int[] bucketCursor; // Scratch fill counters used while building
+    private int[] particleBucket; // Bucket of each particle
+    private int[] sortedParticles; // Particle indices grouped by bucket
+    private int[] particleColor; // Color of the cell of each particle, see buildColoredRuns
+    private final int[] colorCursor; // Scratch fill counters of buildColoredRuns, one extra entry for the prefix sum
+    private int[] runParticles; // Particle indices grouped by color and bucket
+    private final IntList runStart; // Offset of each run in runParticles, one extra entry as the end marker
+    private final int[] colorRunStart; // First run of each color, one extra entry as the end marker
+
+    public SpatialGrid(int dim, float cellSize) {
+        if (dim != 2 && dim != 3) {
+            throw new IllegalArgumentException("Dimension must be 2 or 3");
+        }
+        this.dim = dim;
+        this.cellSize = cellSize;
+        this.mask = MIN_TABLE_SIZE - 1;
+        this.bucketStart = new int[MIN_TABLE_SIZE + 1];
+        this.bucketCursor = new int[MIN_TABLE_SIZE];
+        this.particleBucket = new int[0];
+        this.sortedParticles = new int[0];
+        this.particleColor = new int[0];
+        this.runParticles = new int[0];
+        this.runStart = new IntList();
+        this.colorRunStart = new int[colorCount() + 1];
+        this.colorCursor = new int[colorCount() + 1];
+    }
+
+    /**
+     * Bin the first n particles given by the coordinate arrays. z is ignored for 2D grids and may be null.
+     */
+    public void build(int n, float[] x, float[] y, float[] z) {
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < 2 * n) {
+            tableSize <<= 1;
+        }
+        if (tableSize + 1 != bucketStart.length) {
+            bucketStart = new int[tableSize + 1];
+            bucketCursor = new int[tableSize];
+        } else {
+            Arrays.fill(bucketStart, 0);
+            Arrays.fill(bucketCursor, 0);
+        }
+        if (particleBucket.length < n) {
+            particleBucket = new int[n];
+            sortedParticles = new int[n];
+            particleColor = new int[n];
+        }
+        mask = tableSize - 1;
+
+        // Count the particles of each bucket
+        for (int i = 0; i < n; i++) {
+            int cx = cell(x[i]);
+            int cy = cell(y[i]);
+            int cz = dim == 3 ? cell(z[i]) : 0;
+            int bucket = bucket(cx, cy, cz);
+            particleBucket[i] = bucket;
+            particleColor[i] = Math.floorMod(cx, 3) + 3 * Math.floorMod(cy, 3) + 9 * Math.floorMod(cz, 3);
+            bucketStart[bucket + 1]++;
+        }
+        // Prefix sum gives the first slot of each bucket
+        for (int b = 0; b < tableSize; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        // Stable scatter keeps ascending particle order inside a bucket
+        for (int i = 0; i < n; i++) {
+            int bucket = particleBucket[i];
+            sortedParticles[bucketStart[bucket] + bucketCursor[bucket]++] = i;
+        }
+    }
+
+    /**
+     * Collect the indices of all particles binned in the cells adjacent to the given point, in ascending order.
+     * Candidates still need a distance check, as the cells cover a range of up to 2 * cellSize.
+     */
+    public void query(float px, float py, float pz, IntList out) {
+        collect(px, py, pz, out);
+        // Distinct cells may share a bucket, which would report the same particle twice
+        out.sortAndDeduplicate();
+    }
+
+    /**
+     * Collect the indices of all particles binned in the cells adjacent to the given point, unordered and possibly
+     * with repeats when distinct cells share a bucket
+     */
+    public void collect(float px, float py, float pz, IntList out) {
+        out.clear();
+        int cx = cell(px);
+        int cy = cell(py);
+        int cz = dim == 3 ? cell(pz) : 0;
+        int zRange = dim == 3 ? 1 : 0;
+        for (int dz = -zRange; dz <= zRange; dz++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int bucket = bucket(cx + dx, cy + dy, cz + dz);
+                    for (int s = bucketStart[bucket]; s < bucketStart[bucket + 1]; s++) {
+                        out.add(sortedParticles[s]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Group the first n particles of the last build into runs sharing a cell color and a bucket.
+     * Cells of one color are at least three cells apart along some axis, so the neighborhoods of particles in
+     * different runs of the same color are disjoint, and those runs can be processed concurrently.
+     */
+    public void buildColoredRuns(int n) {
+        if (runParticles.length < n) {
+            runParticles = new int[n];
+        }
+        // Counting sort of the bucket order by color; being stable, it orders by color, then bucket, then index
+        Arrays.fill(colorCursor, 0);
+        for (int i = 0; i < n; i++) {
+            colorCursor[particleColor[i] + 1]++;
+        }
+        for (int c = 0; c < colorCount(); c++) {
+            colorCursor[c + 1] += colorCursor[c];
+        }
+        int binned = bucketStart[mask + 1];
+        for (int s = 0; s < binned; s++) {
+            int i = sortedParticles[s];
+            if (i < n) {
+                runParticles[colorCursor[particleColor[i]]++] = i;
+            }
+        }
+
+        runStart.clear();
+        int nextColor = 0;
+        int previousColor = -1;
+        int previousBucket = -1;
+        for (int s = 0; s < n; s++) {
+            int i = runParticles[s];
+            int color = particleColor[i];
+            int bucket = particleBucket[i];
+            if (color != previousColor || bucket != previousBucket) {
+                while (nextColor <= color) {
+                    colorRunStart[nextColor++] = runStart.size();
+                }
+                runStart.add(s);
+                previousColor = color;
+                previousBucket = bucket;
+            }
+        }
+        while (nextColor <= colorCount()) {
+            colorRunStart[nextColor++] = runStart.size();
+        }
+        runStart.add(n);
+    }
+
+    /**
+     * Number of cell colors, 9 in 2D and 27 in 3D
+     */
+    public int colorCount() {
+        return dim == 3 ? 27 : 9;
+    }
+
+    /**
+     * First run of the given color; the runs of color c are [colorRunStart(c), colorRunStart(c + 1))
+     */
+    public int colorRunStart(int color) {
+        return colorRunStart[color];
+    }
+
+    /**
+     * First slot of the given run; the particles of run r are runParticle(runStart(r) .. runStart(r + 1) - 1)
+     */
+    public int runStart(int run) {
+        return runStart.get(run);
+    }
+
+    public int runParticle(int slot) {
+        return runParticles[slot];
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private int bucket(int cx, int cy, int cz) {
+        return ((cx * PRIME_X) ^ (cy * PRIME_Y) ^ (cz * PRIME_Z)) & mask;
+    }
+}
@@ -0,0 +1,157 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Uniform hashed grid over a set of spheres that do not move, used as the broad phase of the particle-sphere
+ * collisions. Every sphere is listed in each cell its bounding box overlaps, so a point inside a sphere always finds
+ * it among the candidates of its own cell. The candidates of a cell are in ascending sphere order.
+ */
+public class SphereGrid {
+    private static final int PRIME_X = 73856093;
+    private static final int PRIME_Y = 19349663;
+    private static final int PRIME_Z = 83492791;
+    private static final int MIN_TABLE_SIZE = 16;
+    private static final double PADDING = 1e-3; // Bounding box padding in cells, absorbs float rounding of queries
+
+    private final int dim; // 2 or 3
+    private final float cellSize;
+    private int mask; // Hash table size - 1
+    private int[] bucketStart; // Offset of each bucket in entries, one extra entry as the end marker
+    private int[] lastSphere; // Scratch: last sphere counted or filled into each bucket
+    private int[] entries; // Sphere indices grouped by bucket
+
+    public SphereGrid(int dim, float cellSize) {
+        if (dim != 2 && dim != 3) {
+            throw new IllegalArgumentException("Dimension must be 2 or 3");
+        }
+        this.dim = dim;
+        this.cellSize = cellSize;
+        this.mask = MIN_TABLE_SIZE - 1;
+        this.bucketStart = new int[MIN_TABLE_SIZE + 1];
+        this.lastSphere = new int[MIN_TABLE_SIZE];
+        this.entries = new int[0];
+    }
+
+    /**
+     * Bin the first count spheres given by their centers and radii. cz is ignored for 2D grids and may be null.
+     */
+    public void build(int count, double[] cx, double[] cy, double[] cz, double[] radius) {
+        // Size the table after the number of sphere-cell pairs
+        long cells = 0;
+        for (int s = 0; s < count; s++) {
+            long sphereCells = (long) cellSpan(cx[s], radius[s]) * cellSpan(cy[s], radius[s]);
+            if (dim == 3) {
+                sphereCells *= cellSpan(cz[s], radius[s]);
+            }
+            cells += sphereCells;
+        }
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < 2 * cells && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+        if (tableSize + 1 != bucketStart.length) {
+            bucketStart = new int[tableSize + 1];
+            lastSphere = new int[tableSize];
+        } else {
+            Arrays.fill(bucketStart, 0);
+        }
+        mask = tableSize - 1;
+
+        // Count the spheres of each bucket; a sphere whose cells share a bucket is only listed once
+        Arrays.fill(lastSphere, -1);
+        for (int s = 0; s < count; s++) {
+            forEachBucket(s, cx, cy, cz, radius, false);
+        }
+        for (int b = 0; b < tableSize; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        if (entries.length < bucketStart[tableSize]) {
+            entries = new int[bucketStart[tableSize]];
+        }
+        // Fill in sphere order, using the counts as cursors that end up back at the bucket starts
+        Arrays.fill(lastSphere, -1);
+        for (int s = 0; s < count; s++) {
+            forEachBucket(s, cx, cy, cz, radius, true);
+        }
+        for (int b = tableSize; b > 0; b--) {
+            bucketStart[b] = bucketStart[b - 1];
+        }
+        bucketStart[0] = 0;
+    }
+
+    /**
+     * Bucket of the cell containing the given point. z is ignored for 2D grids.
+     */
+    public int bucket(float px, float py, float pz) {
+        int cx = cell(px);
+        int cy = cell(py);
+        int cz = dim == 3 ? cell(pz) : 0;
+        return hash(cx, cy, cz);
+    }
+
+    /**
+     * First candidate of the bucket; the candidates are get(start(bucket) .. end(bucket) - 1)
+     */
+    public int start(int bucket) {
+        return bucketStart[bucket];
+    }
+
+    public int end(int bucket) {
+        return bucketStart[bucket + 1];
+    }
+
+    public int get(int k) {
+        return entries[k];
+    }
+
+    /**
+     * First candidate of the bucket whose sphere index is greater than sphere, or end(bucket) if there is none
+     */
+    public int firstAfter(int bucket, int sphere) {
+        int k = bucketStart[bucket];
+        while (k < bucketStart[bucket + 1] && entries[k] <= sphere) {
+            k++;
+        }
+        return k;
+    }
+
+    private void forEachBucket(int s, double[] cx, double[] cy, double[] cz, double[] radius, boolean fill) {
+        int zFrom = dim == 3 ? lowCell(cz[s], radius[s]) : 0;
+        int zTo = dim == 3 ? highCell(cz[s], radius[s]) : 0;
+        for (int z = zFrom; z <= zTo; z++) {
+            for (int y = lowCell(cy[s], radius[s]); y <= highCell(cy[s], radius[s]); y++) {
+                for (int x = lowCell(cx[s], radius[s]); x <= highCell(cx[s], radius[s]); x++) {
+                    int bucket = hash(x, y, z);
+                    if (lastSphere[bucket] == s) continue;
+                    lastSphere[bucket] = s;
+                    if (fill) {
+                        entries[bucketStart[bucket]++] = s;
+                    } else {
+                        bucketStart[bucket + 1]++;
+                    }
+                }
+            }
+        }
+    }
+
+    private int cellSpan(double center, double radius) {
+        return highCell(center, radius) - lowCell(center, radius) + 1;
+    }
+
+    private int lowCell(double center, double radius) {
+        return (int) Math.floor((center - radius) / cellSize - PADDING);
+    }
+
+    private int highCell(double center, double radius) {
+        return (int) Math.floor((center + radius) / cellSize + PADDING);
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private int hash(int cx, int cy, int cz) {
+        return ((cx * PRIME_X) ^ (cy * PRIME_Y) ^ (cz * PRIME_Z)) & mask;
+    }
+}
@@ -0,0 +1,147 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Springs between particle pairs, keyed by the packed pair of ids (i << 32 | j) with i < j.
+ * Springs live in dense parallel arrays in insertion order, so the solvers can iterate them without touching the
+ * hash index. The index is an open-addressing table with linear probing that maps keys to dense slots.
+ */
+public class SpringTable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY = -1;
+    public int[] first; // Lower particle id of each spring
+    public int[] second; // Higher particle id of each spring
+    public float[] restLength; // Rest length of each spring
+    private long[] keys; // Packed key of each spring, parallel to the dense arrays
+    private int[] table; // Hash slot -> dense index, or EMPTY
+    private int mask;
+    private int size;
+
+    public SpringTable() {
+        this.first = new int[INITIAL_CAPACITY];
+        this.second = new int[INITIAL_CAPACITY];
+        this.restLength = new float[INITIAL_CAPACITY];
+        this.keys = new long[INITIAL_CAPACITY];
+        this.table = new int[2 * INITIAL_CAPACITY];
+        this.mask = table.length - 1;
+        Arrays.fill(table, EMPTY);
+        this.size = 0;
+    }
+
+    /**
+     * Dense index of the spring between particles i < j, or -1 if there is none
+     */
+    public int indexOf(int i, int j) {
+        long key = key(i, j);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int index = table[slot];
+            if (index == EMPTY) {
+                return -1;
+            }
+            if (keys[index] == key) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Add a spring between particles i < j that is not in the table yet and return its dense index
+     */
+    public int add(int i, int j, float length) {
+        if (size == first.length) {
+            grow();
+        }
+        long key = key(i, j);
+        int index = size++;
+        first[index] = i;
+        second[index] = j;
+        restLength[index] = length;
+        keys[index] = key;
+        insert(key, index);
+        return index;
+    }
+
+    /**
+     * Remove every spring whose rest length exceeds the limit, keeping the remaining springs in order
+     */
+    public void removeLongerThan(float limit) {
+        int kept = 0;
+        for (int s = 0; s < size; s++) {
+            if (restLength[s] > limit) continue;
+            first[kept] = first[s];
+            second[kept] = second[s];
+            restLength[kept] = restLength[s];
+            keys[kept] = keys[s];
+            kept++;
+        }
+        if (kept != size) {
+            size = kept;
+            reindex();
+        }
+    }
+
+    /**
+     * Renumber the particles of every spring after the particle at index i moved to index rank[i].
+     * Springs attached to a removed particle, whose rank is -1, are dropped; the others keep their order.
+     */
+    public void remap(int[] rank) {
+        int kept = 0;
+        for (int s = 0; s < size; s++) {
+            int i = rank[first[s]];
+            int j = rank[second[s]];
+            if (i < 0 || j < 0) continue;
+            first[kept] = Math.min(i, j);
+            second[kept] = Math.max(i, j);
+            restLength[kept] = restLength[s];
+            keys[kept] = key(first[kept], second[kept]);
+            kept++;
+        }
+        size = kept;
+        reindex();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(table, EMPTY);
+    }
+
+    private void grow() {
+        int capacity = 2 * first.length;
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        restLength = Arrays.copyOf(restLength, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        table = new int[2 * capacity];
+        mask = table.length - 1;
+        reindex();
+    }
+
+    private void reindex() {
+        Arrays.fill(table, EMPTY);
+        for (int s = 0; s < size; s++) {
+            insert(keys[s], s);
+        }
+    }
+
+    private void insert(long key, int index) {
+        int slot = slot(key);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads the sequential ids over the whole table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 33) & mask;
+    }
+
+    private static long key(int i, int j) {
+        return ((long) i << 32) | (j & 0xFFFFFFFFL);
+    }
+}
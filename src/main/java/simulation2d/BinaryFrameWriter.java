@@ -0,0 +1,111 @@
+package simulation2d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Binary frame output of the 2D simulation, written through a file channel from a large direct buffer.
+ * All values are little-endian:
+ * <pre>
+ * header: int32 magic "FLF2", int32 version, int32 particleCount, int32 frameCount,
+ *         float32 boxWidth, boxHeight, int32 sphereCount, sphereCount x (float32 x, y, radius, int32 movable)
+ * frame:  int32 n, n x (float32 x, y), sphereCount x (float32 x, y)
+ * </pre>
+ * frameCount is rewritten with the number of frames actually written when the writer is closed.
+ */
+public class BinaryFrameWriter implements Closeable {
+    public static final int MAGIC = 0x32464C46; // "FLF2" read as little-endian bytes
+    public static final int VERSION = 1;
+    private static final int FRAME_COUNT_OFFSET = 12;
+    private static final int BUFFER_SIZE = 8 << 20;
+    private static final int BYTES_PER_PARTICLE = 2 * Float.BYTES;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int frameCount;
+
+    public BinaryFrameWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.frameCount = 0;
+    }
+
+    /**
+     * Write the scene description that precedes the frames
+     */
+    public void writeHeader(int particleCount, int frameCount, float boxWidth, float boxHeight,
+                            List<RigidSphere> spheres) throws IOException {
+        ensureRemaining(7 * Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(particleCount);
+        buffer.putInt(frameCount);
+        buffer.putFloat(boxWidth);
+        buffer.putFloat(boxHeight);
+        buffer.putInt(spheres.size());
+        for (RigidSphere sphere : spheres) {
+            ensureRemaining(4 * Float.BYTES);
+            buffer.putFloat(sphere.center.x);
+            buffer.putFloat(sphere.center.y);
+            buffer.putFloat(sphere.radius);
+            buffer.putInt(sphere.movable ? 1 : 0);
+        }
+    }
+
+    /**
+     * Write the positions of the particles and of the rigid spheres as one frame
+     */
+    public void writeFrame(ParticleStore particles, List<RigidSphere> spheres) throws IOException {
+        int n = particles.size();
+        float[] x = particles.x, y = particles.y;
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(n);
+        int i = 0;
+        while (i < n) {
+            ensureRemaining(BYTES_PER_PARTICLE);
+            int end = Math.min(n, i + buffer.remaining() / BYTES_PER_PARTICLE);
+            for (; i < end; i++) {
+                buffer.putFloat(x[i]);
+                buffer.putFloat(y[i]);
+            }
+        }
+        for (RigidSphere sphere : spheres) {
+            ensureRemaining(2 * Float.BYTES);
+            buffer.putFloat(sphere.center.x);
+            buffer.putFloat(sphere.center.y);
+        }
+        frameCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            count.putInt(0, frameCount);
+            channel.write(count, FRAME_COUNT_OFFSET);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,3 +1,6 @@
+package simulation2d;
+
+import core.SolverMetrics;
 import processing.core.PVector;
 
 public class ControlPanel {
@@ -30,6 +33,7 @@ public class ControlPanel {
     private static final float viscosityMax = 1.2F;
     private final Simulation simulation;
     private final FluidSystem fluidSystem;
+    private final ParticleRenderer particleRenderer;
     private final Toggle gravityToggle;
     private final Toggle plasticityToggle;
     private final Toggle viscosityToggle;
@@ -39,11 +43,13 @@ public class ControlPanel {
     private int playColor = 50;
     private int gravityRevert = 1;
     public boolean isPlay = true;
+    public boolean isMetrics = false; // Show the solver metrics over the box
 
 
-    public ControlPanel(Simulation simulation, FluidSystem fluidSystem) {
+    public ControlPanel(Simulation simulation, FluidSystem fluidSystem, ParticleRenderer particleRenderer) {
         this.simulation = simulation;
         this.fluidSystem = fluidSystem;
+        this.particleRenderer = particleRenderer;
         this.gravityToggle = new Toggle("Gravity", 0.3F, gravityX1, gravityY1, gravityX2, gravityY2, 80, 10, simulation);
         this.plasticityToggle = new Toggle("Plasticity", 0.15F, gravityX1, gravityY1 - 30, gravityX2, gravityY2 - 30, 90, 10, simulation);
         this.viscosityToggle = new Toggle("Viscosity", 0F, gravityX1, gravityY1 - 60, gravityX2, gravityY2 - 60, 90, 10, simulation);
@@ -66,7 +72,7 @@ public class ControlPanel {
 
         // Num of Particles
         this.simulation.textSize(20);
-        this.simulation.text(String.format("%d Particles", (int) this.fluidSystem.getParticles().size()), 460, 60);
+        this.simulation.text(String.format("%d Particles", this.fluidSystem.getParticleCount()), 460, 60);
 
         // Num of Spheres
         this.simulation.fill(0);
@@ -97,6 +103,11 @@ public class ControlPanel {
         this.simulation.text("Clear Fluid", clearBodyX1-120, clearBodyY1, clearBodyX2-120, clearBodyY2);
         this.simulation.textSize(20);
 
+        // Solver Metrics
+        if (this.isMetrics) {
+            drawMetricsOverlay();
+        }
+
         // Play or Pause
         this.simulation.textSize(30);
         this.simulation.fill(playColor);
@@ -106,6 +117,33 @@ public class ControlPanel {
             this.simulation.text("Pause",  playX1, playY1, playX2, playY2);
         }
     }
+    /**
+     * Draw the phase timings and counters of the last step in the top left corner of the box
+     */
+    private void drawMetricsOverlay() {
+        SolverMetrics metrics = this.fluidSystem.getMetrics();
+        this.simulation.noStroke();
+        this.simulation.fill(255, 200);
+        this.simulation.rect(5, 5, 190, 13 * (SolverMetrics.Phase.values().length + 7) + 10);
+        this.simulation.fill(0);
+        this.simulation.textSize(11);
+        int y = 18;
+        this.simulation.text(String.format("step %.2f ms", metrics.getLastStepMillis()), 10, y);
+        for (SolverMetrics.Phase phase : SolverMetrics.Phase.values()) {
+            y += 13;
+            this.simulation.text(String.format("%s %.2f ms", phase.label, metrics.getLastPhaseNanos(phase) / 1e6), 10, y);
+        }
+        this.simulation.text(String.format("neighbor pairs %d", metrics.getNeighborPairs()), 10, y += 13);
+        this.simulation.text(String.format("springs %d (+%d -%d)", metrics.getLiveSprings(),
+                metrics.getSpringsCreated(), metrics.getSpringsRemoved()), 10, y += 13);
+        this.simulation.text(String.format("rigid contacts %d", metrics.getRigidContacts()), 10, y += 13);
+        this.simulation.text(String.format("max density %.1f", metrics.getMaxDensity()), 10, y += 13);
+        this.simulation.text(String.format("%s dt %.2f, %d substeps", this.fluidSystem.isAdaptiveTimeStep()
+                ? "adaptive" : "fixed", metrics.getTimeStep(), metrics.getFrameSubsteps()), 10, y += 13);
+        this.simulation.text(String.format("render %s %.2f ms", this.particleRenderer.getLastMode().name().toLowerCase(),
+                this.particleRenderer.getLastMillis()), 10, y += 13);
+    }
+
     public void checkPressed() {
 
         if (isInsideRect(revertGX1, revertGY1, revertGX2, revertGY2)) {
@@ -116,7 +154,7 @@ public class ControlPanel {
             this.fluidSystem.getRigidSpheres().clear();
         }
         if (isInsideRect(clearBodyX1-120, clearBodyY1, clearBodyX2-120, clearBodyY2)) {
-            this.fluidSystem.getParticles().clear();
+            this.fluidSystem.clearParticles();
         }
         if (isInsideRect(modeGX1, modeGY1, modeGX2, modeGY2)) {
             this.simulation.isAddParticle = !this.simulation.isAddParticle;
@@ -0,0 +1,79 @@
+package simulation2d;
+
+import processing.core.PVector;
+
+/**
+ * Source that adds particles to a {@link FluidSystem} at a steady rate, all with the same initial velocity.
+ * The particles are spread over a rectangle or a disc around the center along a low-discrepancy sequence, so the
+ * emission needs no random state and a run is reproducible from the emitter fields alone.
+ */
+public class Emitter {
+    public enum Shape { RECTANGLE, DISC }
+
+    private static final double SPREAD_X = 0.7548776662466927; // R2 sequence steps, from the plastic number
+    private static final double SPREAD_Y = 0.5698402909980532;
+
+    public final Shape shape;
+    public final PVector center;
+    public final float width; // Extent along x of the rectangle, or diameter of the disc
+    public final float height; // Extent along y of the rectangle, unused for the disc
+    public final PVector velocity; // Initial velocity of every emitted particle
+    public final float rate; // Particles per unit of simulated time
+    public float pending = 0; // Fraction of a particle left over from the previous steps
+    public long emitted = 0; // Particles emitted so far, the position in the spread sequence
+
+    public Emitter(Shape shape, PVector center, float width, float height, PVector velocity, float rate) {
+        if (!(rate >= 0) || !(width >= 0) || !(height >= 0)) {
+            throw new IllegalArgumentException("Emitter rate and size must not be negative");
+        }
+        this.shape = shape;
+        this.center = center;
+        this.width = width;
+        this.height = height;
+        this.velocity = velocity;
+        this.rate = rate;
+    }
+
+    /**
+     * Emitter spreading the particles over the width x height rectangle centered at center
+     */
+    public static Emitter rectangle(PVector center, float width, float height, PVector velocity, float rate) {
+        return new Emitter(Shape.RECTANGLE, center, width, height, velocity, rate);
+    }
+
+    /**
+     * Emitter spreading the particles over the disc of the given radius around center
+     */
+    public static Emitter disc(PVector center, float radius, PVector velocity, float rate) {
+        return new Emitter(Shape.DISC, center, 2 * radius, 2 * radius, velocity, rate);
+    }
+
+    /**
+     * Number of particles to emit in a step of length dt
+     */
+    int take(float dt) {
+        pending += rate * dt;
+        int count = (int) pending;
+        pending -= count;
+        return count;
+    }
+
+    /**
+     * Write the position of the next emitted particle to position and advance the sequence
+     */
+    void next(float[] position) {
+        emitted++;
+        double u = (0.5 + SPREAD_X * emitted) % 1;
+        double v = (0.5 + SPREAD_Y * emitted) % 1;
+        if (shape == Shape.RECTANGLE) {
+            position[0] = center.x + (float) ((u - 0.5) * width);
+            position[1] = center.y + (float) ((v - 0.5) * height);
+        } else {
+            // Uniform over the disc area
+            double r = 0.5 * width * Math.sqrt(u);
+            double angle = 2 * Math.PI * v;
+            position[0] = center.x + (float) (r * Math.cos(angle));
+            position[1] = center.y + (float) (r * Math.sin(angle));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package simulation2d;
+
+import core.FluidSolver;
+import core.RigidBodies;
+import processing.core.PVector;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 2D front end of the {@link FluidSolver}: a box, gravity, rigid spheres, emitters and sinks with processing vectors.
+ * A particle counts towards its own density, a relaxed particle recoils by half the push of its neighbors and
+ * particles slide along non-movable spheres without friction.
+ */
+public class FluidSystem extends FluidSolver {
+    public static float h = 20; // Interaction range
+    private static final float DEFAULT_TIME_STEP = 2F;
+    private final float boxWidth; // Extent of the box along x
+    private final float boxHeight; // Extent of the box along y
+    private final ParticleStore particles; // Fluid particles
+    private final List<RigidSphere> rigidSpheres; // All rigid spheres
+    private final List<Emitter> emitters = new ArrayList<>(); // Particle sources, run at the start of every step
+    private final List<Sink> sinks = new ArrayList<>(); // Particle drains, run at the start of every step
+    private final float[] emitPosition = new float[2]; // Scratch position of the emitted particles
+    // Variadic Parameters
+    public PVector gravity = new PVector(0, (float) 0.03); // Gravity acceleration
+
+    /**
+     * Create a fluid system confined to the box [0, boxWidth] x [0, boxHeight]
+     */
+    public FluidSystem(float boxWidth, float boxHeight) {
+        this(new ParticleStore(), boxWidth, boxHeight);
+    }
+
+    private FluidSystem(ParticleStore particles, float boxWidth, float boxHeight) {
+        super(particles, h, DEFAULT_TIME_STEP, true, 0.5F, 0F, true);
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.particles = particles;
+        this.rigidSpheres = new LinkedList<>();
+    }
+
+    @Override
+    protected float boxExtent(int axis) {
+        return axis == 0 ? boxWidth : boxHeight;
+    }
+
+    @Override
+    protected float gravityComponent(int axis) {
+        return axis == 0 ? gravity.x : gravity.y;
+    }
+
+    @Override
+    protected boolean hasSinks() {
+        return !sinks.isEmpty();
+    }
+
+    @Override
+    protected boolean inSink(float x, float y, float z) {
+        for (int s = 0; s < sinks.size(); s++) {
+            if (sinks.get(s).contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected int emitParticles(float dt) {
+        int emitted = 0;
+        for (Emitter emitter : emitters) {
+            for (int count = emitter.take(dt); count > 0; count--) {
+                emitter.next(emitPosition);
+                particles.add(emitPosition[0], emitPosition[1], emitter.velocity.x, emitter.velocity.y);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    @Override
+    protected void gatherRigidBodies(RigidBodies bodies) {
+        for (RigidSphere rigidSphere : rigidSpheres) {
+            bodies.add(rigidSphere.center.x, rigidSphere.center.y, 0, rigidSphere.velocity.x, rigidSphere.velocity.y,
+                    0, rigidSphere.radius, rigidSphere.mass, rigidSphere.movable);
+        }
+    }
+
+    @Override
+    protected void scatterRigidBodies(RigidBodies bodies) {
+        int b = 0;
+        for (RigidSphere rigidSphere : rigidSpheres) {
+            if (rigidSphere.movable) {
+                rigidSphere.center.set((float) bodies.x[b], (float) bodies.y[b]);
+                rigidSphere.velocity.set((float) bodies.vx[b], (float) bodies.vy[b]);
+            }
+            b++;
+        }
+    }
+
+    /**
+     * Add particle in the given position to the system
+     */
+    public void addParticle(PVector position) {
+        this.particles.add(position.x, position.y, 0, 0);
+    }
+
+    public void addParticleWithVelocity(PVector position, PVector velocity) {
+        this.particles.add(position.x, position.y, velocity.x, velocity.y);
+    }
+
+    /**
+     * Add fixed rigid body to the system with given position and radius
+     */
+    public void addFixedRigidBody(PVector position, float radius) {
+        addRigidSphere(new RigidSphere(position, radius));
+    }
+
+    /**
+     * Add movable rigid body to the system with given postiion, radius and mass
+     */
+    public void addMovableRigidBody(PVector position, float radius, float mass) {
+        addRigidSphere(new RigidSphere(position, radius, mass));
+    }
+
+    private void addRigidSphere(RigidSphere rigidSphere) {
+        rigidSphere.paint(getRandom());
+        this.rigidSpheres.add(rigidSphere);
+    }
+
+    /**
+     * Retrieve a read-only view of the particles
+     */
+    public List<Particle> getParticles() {
+        return new AbstractList<Particle>() {
+            @Override
+            public Particle get(int index) {
+                return new Particle(particles, index);
+            }
+
+            @Override
+            public int size() {
+                return particles.size();
+            }
+        };
+    }
+
+    /**
+     * Retrieve the particle storage
+     */
+    public ParticleStore getParticleStore() {
+        return particles;
+    }
+
+    /**
+     * Retrieve the rigid sphere list
+     */
+    public List<RigidSphere> getRigidSpheres() {
+        return rigidSpheres;
+    }
+
+    /**
+     * Add a source of particles, which emits at the start of every step
+     */
+    public void addEmitter(Emitter emitter) {
+        this.emitters.add(emitter);
+    }
+
+    public List<Emitter> getEmitters() {
+        return emitters;
+    }
+
+    /**
+     * Add a drain, which removes the particles inside it at the start of every step
+     */
+    public void addSink(Sink sink) {
+        this.sinks.add(sink);
+    }
+
+    public List<Sink> getSinks() {
+        return sinks;
+    }
+}
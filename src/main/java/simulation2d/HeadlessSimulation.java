@@ -0,0 +1,168 @@
+package simulation2d;
+
+import core.MetricsLog;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the 2D fluid without a window, as fast as possible, and streams the frames to a binary file
+ */
+public class HeadlessSimulation {
+    private static final String OUTPUT = "2DSimulationResult.bin";
+    private static final float STEP_TIME = 2; // Simulated time per step of the step count, one default step
+
+    public static void main(String[] args) {
+        // Options start with "--", everything else is positional
+        List<String> positional = new ArrayList<>();
+        String outputFile = OUTPUT;
+        String sceneFile = null;
+        int boxWidth = 0; // Box size, 0 keeps the domain of the scene
+        int boxHeight = 0;
+        int frameInterval = 1;
+        float skin = 0;
+        boolean jacobi = false;
+        int relaxIterations = 1;
+        boolean adaptive = false;
+        int reorderInterval = 0;
+        float maxAge = -1; // Lifetime of the particles, -1 keeps the scene's
+        Long seed = null; // Seed of a deterministic run, null keeps the scene's
+        String metricsFile = null;
+        int metricsInterval = 10;
+        for (int a = 0; a < args.length; a++) {
+            try {
+                if (args[a].equals("--output") && a + 1 < args.length) {
+                    outputFile = args[++a];
+                } else if (args[a].equals("--scene") && a + 1 < args.length) {
+                    sceneFile = args[++a];
+                } else if (args[a].equals("--width") && a + 1 < args.length) {
+                    boxWidth = Integer.parseInt(args[++a]);
+                } else if (args[a].equals("--height") && a + 1 < args.length) {
+                    boxHeight = Integer.parseInt(args[++a]);
+                } else if (args[a].equals("--metrics") && a + 1 < args.length) {
+                    metricsFile = args[++a];
+                } else if (args[a].equals("--metrics-every") && a + 1 < args.length) {
+                    metricsInterval = Integer.parseInt(args[++a]);
+                } else if (args[a].equals("--skin") && a + 1 < args.length) {
+                    skin = Float.parseFloat(args[++a]);
+                } else if (args[a].equals("--adaptive")) {
+                    adaptive = true;
+                } else if (args[a].equals("--jacobi")) {
+                    jacobi = true;
+                } else if (args[a].equals("--relax-iterations") && a + 1 < args.length) {
+                    relaxIterations = Integer.parseInt(args[++a]);
+                } else if (args[a].equals("--reorder-every") && a + 1 < args.length) {
+                    reorderInterval = Integer.parseInt(args[++a]);
+                } else if (args[a].equals("--max-age") && a + 1 < args.length) {
+                    maxAge = Float.parseFloat(args[++a]);
+                    if (!(maxAge >= 0)) {
+                        throw new NumberFormatException();
+                    }
+                } else if (args[a].equals("--seed") && a + 1 < args.length) {
+                    seed = Long.parseLong(args[++a]);
+                } else if (args[a].equals("--frame-every") && a + 1 < args.length) {
+                    frameInterval = Integer.parseInt(args[++a]);
+                } else if (args[a].startsWith("--")) {
+                    System.out.println("Unknown Option " + args[a] + "!");
+                    System.exit(-1);
+                } else {
+                    positional.add(args[a]);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Option " + args[a - 1] + " Invalid!");
+                System.exit(-1);
+            }
+        }
+        if (boxWidth < 0 || boxHeight < 0 || frameInterval < 1 || skin < 0 || metricsInterval < 1
+                || relaxIterations < 1 || reorderInterval < 0) {
+            System.out.println("Box Size, Interval, Skin or Iterations Invalid!");
+            System.exit(-1);
+        }
+
+        int modelNum = 0;
+        int stepLimit = 500;
+        int threadCount = 1;
+        try {
+            if (positional.size() >= 1) {
+                modelNum = Integer.parseInt(positional.get(0));
+            }
+            if (positional.size() >= 2) {
+                stepLimit = Integer.parseInt(positional.get(1));
+            }
+            if (positional.size() >= 3) {
+                threadCount = Integer.parseInt(positional.get(2));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid argument!");
+            System.exit(-1);
+        }
+        if (modelNum < 0 || modelNum > 5) {
+            System.out.println("Invalid model number!");
+            System.exit(-1);
+        }
+        if (stepLimit < 0) {
+            System.out.println("Invalid step count!");
+            System.exit(-1);
+        }
+        if (threadCount < 1) {
+            System.out.println("Invalid thread count!");
+            System.exit(-1);
+        }
+
+        Scene scene = null;
+        try {
+            scene = sceneFile != null ? Scene.read(Paths.get(sceneFile)) : Scene.preset(modelNum);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Scene File Invalid!");
+            System.exit(-1);
+        }
+        if (boxWidth == 0) {
+            boxWidth = scene.width;
+        }
+        if (boxHeight == 0) {
+            boxHeight = scene.height;
+        }
+        if (seed != null) {
+            scene.seed = seed;
+        }
+
+        FluidSystem fluidSystem = scene.createFluidSystem(boxWidth, boxHeight);
+        fluidSystem.setThreadCount(threadCount);
+        fluidSystem.setNeighborSkin(skin);
+        fluidSystem.setJacobiRelaxation(jacobi);
+        fluidSystem.setRelaxationIterations(relaxIterations);
+        fluidSystem.setAdaptiveTimeStep(adaptive);
+        fluidSystem.setReorderInterval(reorderInterval);
+        if (maxAge >= 0) {
+            fluidSystem.setMaxParticleAge(maxAge);
+        }
+        fluidSystem.getMetrics().register("FluidSystem");
+
+        long start = System.nanoTime();
+        long substeps = 0;
+        try (BinaryFrameWriter frameWriter = new BinaryFrameWriter(Paths.get(outputFile));
+             MetricsLog metricsLog = metricsFile != null ? new MetricsLog(Paths.get(metricsFile)) : null) {
+            frameWriter.writeHeader(fluidSystem.getParticleCount(), stepLimit / frameInterval,
+                    boxWidth, boxHeight, fluidSystem.getRigidSpheres());
+            for (int step = 1; step <= stepLimit; step++) {
+                substeps += fluidSystem.advance(STEP_TIME);
+                if (step % frameInterval == 0) {
+                    frameWriter.writeFrame(fluidSystem.getParticleStore(), fluidSystem.getRigidSpheres());
+                }
+                if (metricsLog != null && step % metricsInterval == 0) {
+                    metricsLog.write(step, fluidSystem.getMetrics());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d steps of %d particles in %.2f s (%.1f steps/s, %d substeps, "
+                        + "%.0f%% neighbor rebuilds)", stepLimit, fluidSystem.getParticleCount(), seconds,
+                stepLimit / seconds, substeps, 100 * fluidSystem.getMetrics().getNeighborRebuildRate()));
+    }
+}
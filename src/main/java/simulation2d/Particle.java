@@ -0,0 +1,37 @@
+package simulation2d;
+
+import processing.core.PVector;
+
+/**
+ * Lightweight view of one particle of a {@link ParticleStore}, used by the renderer and the loaders
+ */
+public class Particle {
+    public static float PARTICLE_RADIUS = 5;
+    public final int id;
+    private final ParticleStore store;
+
+    public Particle(ParticleStore store, int id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    public float getX() {
+        return store.x[id];
+    }
+
+    public float getY() {
+        return store.y[id];
+    }
+
+    public PVector getPosition() {
+        return new PVector(store.x[id], store.y[id]);
+    }
+
+    public PVector getVelocity() {
+        return new PVector(store.vx[id], store.vy[id]);
+    }
+
+    public float getPressure() {
+        return store.pressure[id];
+    }
+}
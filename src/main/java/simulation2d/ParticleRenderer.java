@@ -0,0 +1,191 @@
+package simulation2d;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+import java.util.Arrays;
+
+/**
+ * Draws the particles of a {@link FluidSystem} colored by their pressure, with a level of detail that follows the
+ * particle count. Small scenes are drawn as antialiased points, one call per particle. Larger ones are stamped as
+ * discs straight into a pixel buffer that is drawn as a single image. The density mode instead splats the particles
+ * onto a grid of DENSITY_CELL pixel cells and fills the same buffer cell by cell, which costs one pass over the
+ * particles and one over the pixels whatever the particle count.
+ */
+public class ParticleRenderer {
+    public enum Mode { POINTS, PIXELS, DENSITY }
+
+    private static final int POINT_LIMIT = 2000; // Largest particle count drawn as points
+    private static final int DENSITY_CELL = 4; // Edge of a density grid cell in pixels
+    private static final float FULL_CELL = 0.5F; // Particles per cell drawn with full coverage, about the rest density
+    private static final int WHITE = 0xFFFFFFFF;
+    private final int width; // Extent of the box in pixels
+    private final int height;
+    private final PImage image; // Pixel buffer of the box
+    private final int[] discOffsetX; // Pixels covered by a particle, relative to its center
+    private final int[] discOffsetY;
+    private final int gridWidth; // Density grid size in cells
+    private final int gridHeight;
+    private final float[] cellWeight; // Particles splatted onto each cell
+    private final float[] cellPressure; // Weighted pressure sum of each cell
+    private boolean density = false; // Draw the density grid instead of the particles
+    private Mode lastMode = Mode.POINTS;
+    private long lastNanos; // Time taken by the last draw
+
+    public ParticleRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new PImage(width, height, PConstants.RGB);
+
+        int radius = (int) Math.ceil(Particle.PARTICLE_RADIUS);
+        int count = 0;
+        int[] offsetX = new int[(2 * radius + 1) * (2 * radius + 1)];
+        int[] offsetY = new int[offsetX.length];
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if (dx * dx + dy * dy <= Particle.PARTICLE_RADIUS * Particle.PARTICLE_RADIUS) {
+                    offsetX[count] = dx;
+                    offsetY[count] = dy;
+                    count++;
+                }
+            }
+        }
+        this.discOffsetX = Arrays.copyOf(offsetX, count);
+        this.discOffsetY = Arrays.copyOf(offsetY, count);
+
+        this.gridWidth = (width + DENSITY_CELL - 1) / DENSITY_CELL;
+        this.gridHeight = (height + DENSITY_CELL - 1) / DENSITY_CELL;
+        this.cellWeight = new float[gridWidth * gridHeight];
+        this.cellPressure = new float[gridWidth * gridHeight];
+    }
+
+    public void setDensity(boolean density) {
+        this.density = density;
+    }
+
+    public boolean isDensity() {
+        return density;
+    }
+
+    /**
+     * Mode used by the last draw
+     */
+    public Mode getLastMode() {
+        return lastMode;
+    }
+
+    public double getLastMillis() {
+        return lastNanos / 1e6;
+    }
+
+    /**
+     * Draw the particles of the fluid system into the box at the origin of the graphics
+     */
+    public void draw(PGraphics graphics, FluidSystem fluidSystem) {
+        long start = System.nanoTime();
+        ParticleStore particles = fluidSystem.getParticleStore();
+        float minPressure = fluidSystem.getMinPressure();
+        float pressureRange = fluidSystem.getMaxPressure() - minPressure;
+        if (density) {
+            lastMode = Mode.DENSITY;
+            drawDensity(graphics, particles, minPressure, pressureRange);
+        } else if (particles.size() <= POINT_LIMIT) {
+            lastMode = Mode.POINTS;
+            drawPoints(graphics, particles, minPressure, pressureRange);
+        } else {
+            lastMode = Mode.PIXELS;
+            drawPixels(graphics, particles, minPressure, pressureRange);
+        }
+        lastNanos = System.nanoTime() - start;
+    }
+
+    private void drawPoints(PGraphics graphics, ParticleStore particles, float minPressure, float pressureRange) {
+        graphics.strokeWeight(Particle.PARTICLE_RADIUS * 2);
+        for (int i = 0; i < particles.size(); i++) {
+            graphics.stroke(color(particles.pressure[i], minPressure, pressureRange));
+            graphics.point(particles.x[i], particles.y[i]);
+        }
+    }
+
+    private void drawPixels(PGraphics graphics, ParticleStore particles, float minPressure, float pressureRange) {
+        int[] pixels = image.pixels;
+        Arrays.fill(pixels, WHITE);
+        for (int i = 0; i < particles.size(); i++) {
+            int color = color(particles.pressure[i], minPressure, pressureRange);
+            int cx = (int) particles.x[i];
+            int cy = (int) particles.y[i];
+            for (int d = 0; d < discOffsetX.length; d++) {
+                int px = cx + discOffsetX[d];
+                int py = cy + discOffsetY[d];
+                if (px >= 0 && px < width && py >= 0 && py < height) {
+                    pixels[py * width + px] = color;
+                }
+            }
+        }
+        image.updatePixels();
+        graphics.image(image, 0, 0);
+    }
+
+    private void drawDensity(PGraphics graphics, ParticleStore particles, float minPressure, float pressureRange) {
+        Arrays.fill(cellWeight, 0);
+        Arrays.fill(cellPressure, 0);
+        // Bilinear splat onto the cell centers
+        for (int i = 0; i < particles.size(); i++) {
+            float gx = particles.x[i] / DENSITY_CELL - 0.5F;
+            float gy = particles.y[i] / DENSITY_CELL - 0.5F;
+            int x0 = (int) Math.floor(gx);
+            int y0 = (int) Math.floor(gy);
+            float fx = gx - x0;
+            float fy = gy - y0;
+            splat(x0, y0, (1 - fx) * (1 - fy), particles.pressure[i]);
+            splat(x0 + 1, y0, fx * (1 - fy), particles.pressure[i]);
+            splat(x0, y0 + 1, (1 - fx) * fy, particles.pressure[i]);
+            splat(x0 + 1, y0 + 1, fx * fy, particles.pressure[i]);
+        }
+        int[] pixels = image.pixels;
+        for (int cy = 0; cy < gridHeight; cy++) {
+            for (int cx = 0; cx < gridWidth; cx++) {
+                int c = cy * gridWidth + cx;
+                float weight = cellWeight[c];
+                int color = WHITE;
+                if (weight > 0) {
+                    // Blend over the white background by the cell coverage
+                    float coverage = Math.min(1, weight / FULL_CELL);
+                    int full = color(cellPressure[c] / weight, minPressure, pressureRange);
+                    color = 0xFF000000
+                            | blend(full >> 16 & 0xFF, coverage) << 16
+                            | blend(full >> 8 & 0xFF, coverage) << 8
+                            | blend(full & 0xFF, coverage);
+                }
+                int maxX = Math.min(width, (cx + 1) * DENSITY_CELL);
+                int maxY = Math.min(height, (cy + 1) * DENSITY_CELL);
+                for (int py = cy * DENSITY_CELL; py < maxY; py++) {
+                    Arrays.fill(pixels, py * width + cx * DENSITY_CELL, py * width + maxX, color);
+                }
+            }
+        }
+        image.updatePixels();
+        graphics.image(image, 0, 0);
+    }
+
+    private void splat(int x, int y, float weight, float pressure) {
+        if (x >= 0 && x < gridWidth && y >= 0 && y < gridHeight) {
+            cellWeight[y * gridWidth + x] += weight;
+            cellPressure[y * gridWidth + x] += weight * pressure;
+        }
+    }
+
+    private static int blend(int channel, float coverage) {
+        return (int) (255 + (channel - 255) * coverage);
+    }
+
+    /**
+     * Third-order color function from yellow at the lowest pressure to green at the highest
+     */
+    private static int color(float pressure, float minPressure, float pressureRange) {
+        float t = pressureRange > 0 ? Math.max(0, Math.min(1, (pressure - minPressure) / pressureRange)) : 0;
+        int red = Math.max(0, 252 - (int) (256 * t * t * t));
+        return 0xFF000000 | red << 16 | 236 << 8 | 12;
+    }
+}
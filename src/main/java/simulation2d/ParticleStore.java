@@ -0,0 +1,20 @@
+package simulation2d;
+
+import core.ParticleArrays;
+
+/**
+ * Structure-of-arrays storage of the 2D fluid particles, see {@link ParticleArrays}
+ */
+public class ParticleStore extends ParticleArrays {
+
+    public ParticleStore() {
+        super(2);
+    }
+
+    /**
+     * Append a particle and return its id
+     */
+    public int add(float x, float y, float vx, float vy) {
+        return add(x, y, 0, vx, vy, 0);
+    }
+}
@@ -0,0 +1,38 @@
+package simulation2d;
+
+import processing.core.PVector;
+
+import java.util.Random;
+
+public class RigidSphere {
+    PVector center;
+    float radius;
+    float mass;
+    boolean movable;
+    PVector velocity;
+    int red;
+    int green;
+    int blue;
+
+    public RigidSphere(PVector center, float radius) {
+        this.center = center;
+        this.radius = radius;
+        this.movable = false;
+        this.velocity = new PVector(0, 0);
+    }
+
+    public RigidSphere(PVector center, float radius, float mass) {
+        this(center, radius);
+        this.movable = true;
+        this.mass = mass;
+    }
+
+    /**
+     * Assign a random color for visualization
+     */
+    void paint(Random random) {
+        this.red = random.nextInt(256);
+        this.green = random.nextInt(256);
+        this.blue = random.nextInt(256);
+    }
+}
@@ -0,0 +1,305 @@
+package simulation2d;
+
+import core.SceneReader;
+import processing.core.PVector;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 2D scene read from a scene file, one shape or setting per line:
+ * <pre>
+ * domain width height                     # Extent of the box the coordinates refer to, 300 x 300 by default
+ * gravity gx gy
+ * plasticity alpha
+ * viscosity beta delta                    # Linear and quadratic dependence
+ * time-step dt
+ * max-age t                               # Lifetime of the particles, 0 keeps them forever
+ * seed n                                  # Seed of the random numbers, also makes the run deterministic
+ * spacing s                               # Particle spacing of the fills below, 5 by default
+ * box minX minY maxX maxY                 # Fluid filling the rectangle
+ * sphere cx cy r                          # Fluid filling the disc
+ * rigid cx cy r                           # Non-movable rigid sphere
+ * movable cx cy r mass                    # Movable rigid sphere
+ * emitter rectangle cx cy w h vx vy rate
+ * emitter disc cx cy r vx vy rate
+ * sink minX minY maxX maxY
+ * </pre>
+ * The scene only keeps the shapes. Their particles are generated when the scene is added to a fluid system, straight
+ * into its particle storage after reserving room for all of them, so large scenes load without intermediate objects.
+ */
+public class Scene {
+    private static final float DEFAULT_SPACING = 5;
+    public int width = Simulation.boxWidth; // Domain the coordinates refer to
+    public int height = Simulation.canvasHeight;
+    public PVector gravity = null; // Settings of the fluid system, null or NaN keeps its default
+    public float alpha = Float.NaN;
+    public float beta = Float.NaN;
+    public float delta = Float.NaN;
+    public float timeStep = Float.NaN;
+    public float maxParticleAge = Float.NaN;
+    public Long seed = null; // Runs deterministically from this seed, null keeps the fluid as it is
+    private final List<Fill> fills = new ArrayList<>();
+    private final List<RigidSphere> rigidSpheres = new ArrayList<>();
+    private final List<Emitter> emitters = new ArrayList<>();
+    private final List<Sink> sinks = new ArrayList<>();
+
+    /**
+     * Fluid filling a rectangle, or a disc of radius maxX around (minX, minY), with particles on a square lattice
+     */
+    private static class Fill {
+        final boolean disc;
+        final float minX;
+        final float minY;
+        final float maxX;
+        final float maxY;
+        final float spacing;
+
+        Fill(boolean disc, float minX, float minY, float maxX, float maxY, float spacing) {
+            this.disc = disc;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.spacing = spacing;
+        }
+    }
+
+    public static Scene read(Path path) throws IOException {
+        try (SceneReader reader = SceneReader.open(path)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Bundled scene of the preset model
+     */
+    public static Scene preset(int model) throws IOException {
+        try (SceneReader reader = SceneReader.openResource("scenes/2d/model" + model + ".scene")) {
+            return read(reader);
+        }
+    }
+
+    public static Scene read(SceneReader reader) throws IOException {
+        Scene scene = new Scene();
+        float spacing = DEFAULT_SPACING;
+        while (reader.next()) {
+            try {
+                switch (reader.keyword()) {
+                    case "domain":
+                        reader.expectArguments(2);
+                        scene.width = (int) positive(reader, 0);
+                        scene.height = (int) positive(reader, 1);
+                        if (scene.width <= 0 || scene.height <= 0) {
+                            throw reader.error("domain must not be empty");
+                        }
+                        break;
+                    case "gravity":
+                        reader.expectArguments(2);
+                        scene.gravity = new PVector(reader.number(0), reader.number(1));
+                        break;
+                    case "plasticity":
+                        reader.expectArguments(1);
+                        scene.alpha = reader.number(0);
+                        break;
+                    case "viscosity":
+                        reader.expectArguments(2);
+                        scene.beta = reader.number(0);
+                        scene.delta = reader.number(1);
+                        break;
+                    case "time-step":
+                        reader.expectArguments(1);
+                        scene.timeStep = positive(reader, 0);
+                        break;
+                    case "max-age":
+                        reader.expectArguments(1);
+                        scene.maxParticleAge = reader.number(0);
+                        if (!(scene.maxParticleAge >= 0)) {
+                            throw reader.error("max-age must not be negative");
+                        }
+                        break;
+                    case "seed":
+                        reader.expectArguments(1);
+                        scene.seed = reader.integer(0);
+                        break;
+                    case "spacing":
+                        reader.expectArguments(1);
+                        spacing = positive(reader, 0);
+                        break;
+                    case "box":
+                        reader.expectArguments(4);
+                        scene.fills.add(new Fill(false, reader.number(0), reader.number(1),
+                                reader.number(2), reader.number(3), spacing));
+                        break;
+                    case "sphere":
+                        reader.expectArguments(3);
+                        scene.fills.add(new Fill(true, reader.number(0), reader.number(1),
+                                positive(reader, 2), 0, spacing));
+                        break;
+                    case "rigid":
+                        reader.expectArguments(3);
+                        scene.rigidSpheres.add(new RigidSphere(new PVector(reader.number(0), reader.number(1)),
+                                positive(reader, 2)));
+                        break;
+                    case "movable":
+                        reader.expectArguments(4);
+                        scene.rigidSpheres.add(new RigidSphere(new PVector(reader.number(0), reader.number(1)),
+                                positive(reader, 2), positive(reader, 3)));
+                        break;
+                    case "emitter":
+                        scene.emitters.add(readEmitter(reader));
+                        break;
+                    case "sink":
+                        reader.expectArguments(4);
+                        scene.sinks.add(new Sink(reader.number(0), reader.number(1),
+                                reader.number(2), reader.number(3)));
+                        break;
+                    default:
+                        throw reader.error("unknown keyword " + reader.keyword());
+                }
+            } catch (IllegalArgumentException e) {
+                throw reader.error(e.getMessage());
+            }
+        }
+        return scene;
+    }
+
+    private static Emitter readEmitter(SceneReader reader) throws IOException {
+        if (reader.argumentCount() == 8 && reader.word(0).equals("rectangle")) {
+            return Emitter.rectangle(new PVector(reader.number(1), reader.number(2)),
+                    reader.number(3), reader.number(4),
+                    new PVector(reader.number(5), reader.number(6)), reader.number(7));
+        } else if (reader.argumentCount() == 7 && reader.word(0).equals("disc")) {
+            return Emitter.disc(new PVector(reader.number(1), reader.number(2)), reader.number(3),
+                    new PVector(reader.number(4), reader.number(5)), reader.number(6));
+        }
+        throw reader.error("expected emitter rectangle cx cy w h vx vy rate or emitter disc cx cy r vx vy rate");
+    }
+
+    private static float positive(SceneReader reader, int index) throws IOException {
+        float value = reader.number(index);
+        if (!(value > 0)) {
+            throw reader.error(reader.keyword() + " needs a positive value, found " + reader.word(index));
+        }
+        return value;
+    }
+
+    /**
+     * Create a fluid system with the scene at its own size
+     */
+    public FluidSystem createFluidSystem() {
+        return createFluidSystem(width, height);
+    }
+
+    /**
+     * Create a fluid system confined to the given box, with the scene stretched from its domain to the box
+     */
+    public FluidSystem createFluidSystem(float boxWidth, float boxHeight) {
+        FluidSystem fluidSystem = new FluidSystem(boxWidth, boxHeight);
+        addTo(fluidSystem, boxWidth, boxHeight);
+        return fluidSystem;
+    }
+
+    /**
+     * Number of particles the scene fills into the given box
+     */
+    public int countParticles(float boxWidth, float boxHeight) {
+        return fill(null, boxWidth / width, boxHeight / height);
+    }
+
+    /**
+     * Add the scene to the fluid system, stretching the positions and sizes from the domain of the scene to the box.
+     * The particle spacing, the emitter sizes and the velocities are kept.
+     */
+    public void addTo(FluidSystem fluidSystem, float boxWidth, float boxHeight) {
+        float scaleX = boxWidth / width;
+        float scaleY = boxHeight / height;
+        float scaleRadius = Math.min(scaleX, scaleY);
+        if (gravity != null) {
+            fluidSystem.gravity = gravity.copy();
+        }
+        if (!Float.isNaN(alpha)) {
+            fluidSystem.alpha = alpha;
+        }
+        if (!Float.isNaN(beta)) {
+            fluidSystem.beta = beta;
+            fluidSystem.delta = delta;
+        }
+        if (!Float.isNaN(timeStep)) {
+            fluidSystem.setTimeStep(timeStep);
+        }
+        if (!Float.isNaN(maxParticleAge)) {
+            fluidSystem.setMaxParticleAge(maxParticleAge);
+        }
+        if (seed != null) {
+            fluidSystem.setSeed(seed);
+            fluidSystem.setDeterministic(true);
+        }
+
+        ParticleStore particles = fluidSystem.getParticleStore();
+        particles.ensureCapacity(particles.size() + fill(null, scaleX, scaleY));
+        fill(particles, scaleX, scaleY);
+
+        for (RigidSphere rigidSphere : rigidSpheres) {
+            PVector center = new PVector(rigidSphere.center.x * scaleX, rigidSphere.center.y * scaleY);
+            if (rigidSphere.movable) {
+                fluidSystem.addMovableRigidBody(center, rigidSphere.radius * scaleRadius, rigidSphere.mass);
+            } else {
+                fluidSystem.addFixedRigidBody(center, rigidSphere.radius * scaleRadius);
+            }
+        }
+        for (Emitter emitter : emitters) {
+            fluidSystem.addEmitter(new Emitter(emitter.shape,
+                    new PVector(emitter.center.x * scaleX, emitter.center.y * scaleY),
+                    emitter.width, emitter.height, emitter.velocity.copy(), emitter.rate));
+        }
+        for (Sink sink : sinks) {
+            fluidSystem.addSink(new Sink(sink.minX * scaleX, sink.minY * scaleY,
+                    sink.maxX * scaleX, sink.maxY * scaleY));
+        }
+    }
+
+    /**
+     * Add the particles of every fill to the storage, or only count them if particles is null
+     */
+    private int fill(ParticleStore particles, float scaleX, float scaleY) {
+        int count = 0;
+        for (Fill fill : fills) {
+            float spacing = fill.spacing;
+            if (!fill.disc) {
+                float minX = fill.minX * scaleX;
+                float minY = fill.minY * scaleY;
+                int columns = SceneReader.latticePoints(minX, fill.maxX * scaleX, spacing);
+                int rows = SceneReader.latticePoints(minY, fill.maxY * scaleY, spacing);
+                if (particles != null) {
+                    for (int i = 0; i < columns; i++) {
+                        for (int j = 0; j < rows; j++) {
+                            particles.add(minX + i * spacing, minY + j * spacing, 0, 0);
+                        }
+                    }
+                }
+                count += columns * rows;
+            } else {
+                float centerX = fill.minX * scaleX;
+                float centerY = fill.minY * scaleY;
+                float radius = fill.maxX * Math.min(scaleX, scaleY);
+                int reach = (int) (radius / spacing);
+                for (int i = -reach; i <= reach; i++) {
+                    for (int j = -reach; j <= reach; j++) {
+                        float dx = i * spacing;
+                        float dy = j * spacing;
+                        if (dx * dx + dy * dy <= radius * radius) {
+                            if (particles != null) {
+                                particles.add(centerX + dx, centerY + dy, 0, 0);
+                            }
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,176 @@
+package simulation2d;
+
+import processing.core.PApplet;
+import processing.core.PVector;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class Simulation extends PApplet {
+    public static final int canvasHeight = 300;
+    private static final int canvasWidth = 600;
+    public static final int boxWidth = canvasWidth / 2;
+    private static final int wallStroke = 10;
+    private static final int rigidBodyStroke = 0;
+    private static final float PURE_WHITE = 255;
+    private static final float FRAME_TIME = 2; // Simulated time per drawn frame, one default step
+    public boolean isAddParticle = true;
+    private FluidSystem fluidSystem;
+    private ControlPanel controlPanel;
+    private ParticleRenderer particleRenderer;
+    private static Scene scene;
+    private static int modelNum = 0;
+    private static int threadCount = 1;
+
+    public static void main(String[] args) {
+        // A scene file given with --scene replaces the preset model, --seed makes the run deterministic
+        List<String> positional = new ArrayList<>();
+        String sceneFile = null;
+        Long seed = null;
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("--scene") && a + 1 < args.length) {
+                sceneFile = args[++a];
+            } else if (args[a].equals("--seed") && a + 1 < args.length) {
+                try {
+                    seed = Long.parseLong(args[++a]);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid seed!");
+                    System.exit(-1);
+                }
+            } else {
+                positional.add(args[a]);
+            }
+        }
+        // args check
+        if(positional.size() >= 1) {
+            try {
+                modelNum = Integer.parseInt(positional.get(0));
+                if(modelNum < 0 || modelNum > 5) {
+                    System.out.println("Invalid model number!");
+                    System.exit(-1);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid model number!");
+                System.exit(-1);
+            }
+        }
+        if(positional.size() >= 2) {
+            try {
+                threadCount = Integer.parseInt(positional.get(1));
+                if(threadCount < 1) {
+                    System.out.println("Invalid thread count!");
+                    System.exit(-1);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid thread count!");
+                System.exit(-1);
+            }
+        }
+        try {
+            scene = sceneFile != null ? Scene.read(Paths.get(sceneFile)) : Scene.preset(modelNum);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Scene File Invalid!");
+            System.exit(-1);
+        }
+        if (seed != null) {
+            scene.seed = seed;
+        }
+        // Initialize the GUI
+        PApplet.main(Simulation.class);
+    }
+
+    @Override
+    public void settings() {
+        // GUI Size
+        this.size(canvasWidth, canvasHeight);
+    }
+
+    @Override
+    public void setup() {
+        // Load the scene, stretched to the box
+        this.fluidSystem = scene.createFluidSystem(boxWidth, height);
+        this.fluidSystem.setThreadCount(threadCount);
+        this.fluidSystem.getMetrics().register("FluidSystem");
+        this.particleRenderer = new ParticleRenderer(boxWidth, height);
+        this.controlPanel = new ControlPanel(this, this.fluidSystem, this.particleRenderer);
+    }
+
+    private void addFluid() {
+        for (RigidSphere rigidSphere : this.fluidSystem.getRigidSpheres()) {
+            if (PVector.dist(rigidSphere.center, new PVector(mouseX, mouseY)) < rigidSphere.radius) {
+                return;
+            }
+        }
+        this.fluidSystem.addParticle(new PVector(mouseX, mouseY));
+    }
+
+    @Override
+    public void mousePressed() {
+        this.controlPanel.checkPressed();
+    }
+
+    @Override
+    public void keyPressed() {
+        // M toggles the solver metrics overlay
+        if (key == 'm' || key == 'M') {
+            this.controlPanel.isMetrics = !this.controlPanel.isMetrics;
+        }
+        // A toggles the adaptive time step
+        if (key == 'a' || key == 'A') {
+            this.fluidSystem.setAdaptiveTimeStep(!this.fluidSystem.isAdaptiveTimeStep());
+        }
+        // D toggles the density view
+        if (key == 'd' || key == 'D') {
+            this.particleRenderer.setDensity(!this.particleRenderer.isDensity());
+        }
+    }
+
+    @Override
+    public void draw() {
+        // Reset the canvas
+        this.background(PURE_WHITE);
+
+        // Add fluids
+        if (isAddParticle && mousePressed && mouseX > 0 && mouseX < boxWidth) {
+            this.addFluid();
+        }
+
+        // Simulate the fluid
+        if (controlPanel.isPlay) {
+            this.fluidSystem.advance(FRAME_TIME);
+        }
+
+        // Draw the fluid
+        this.particleRenderer.draw(this.g, this.fluidSystem);
+
+        // Draw the sinks
+        strokeWeight(1);
+        stroke(128);
+        noFill();
+        for (Sink sink : this.fluidSystem.getSinks()) {
+            rect(sink.minX, sink.minY, sink.maxX - sink.minX, sink.maxY - sink.minY);
+        }
+
+        // Draw the box wall
+        strokeWeight(wallStroke);
+        stroke(0);
+        line(0, 0, boxWidth, 0);
+        line(0, 0, 0, height);
+        line(boxWidth, height, boxWidth, 0);
+        line(boxWidth, height, 0, height);
+
+        // Draw Rigid bodies
+        strokeWeight(rigidBodyStroke);
+        for (RigidSphere rigidSphere : this.fluidSystem.getRigidSpheres()) {
+            fill(rigidSphere.red, rigidSphere.green, rigidSphere.blue);
+            ellipse(rigidSphere.center.x, rigidSphere.center.y, rigidSphere.radius * 2, rigidSphere.radius * 2);
+        }
+
+        // Display info
+        this.controlPanel.drawDisplayPanel();
+    }
+}
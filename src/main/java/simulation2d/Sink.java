@@ -0,0 +1,25 @@
+package simulation2d;
+
+/**
+ * Drain that removes every particle of a {@link FluidSystem} entering the rectangle [minX, maxX] x [minY, maxY]
+ */
+public class Sink {
+    public final float minX;
+    public final float minY;
+    public final float maxX;
+    public final float maxY;
+
+    public Sink(float minX, float minY, float maxX, float maxY) {
+        if (!(minX <= maxX) || !(minY <= maxY)) {
+            throw new IllegalArgumentException("Sink bounds must not be inverted");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public boolean contains(float x, float y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+}
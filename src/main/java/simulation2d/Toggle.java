@@ -1,3 +1,5 @@
+package simulation2d;
+
 public class Toggle {
     public static final int toggleColor = 50;
 
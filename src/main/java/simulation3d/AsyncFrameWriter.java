@@ -0,0 +1,186 @@
+package simulation3d;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes frames to another {@link FrameWriter} on a dedicated thread so that the solver does not wait for the disk.
+ * Positions are copied into a fixed pool of snapshot buffers; the caller only blocks when every buffer is in flight.
+ */
+public class AsyncFrameWriter implements FrameWriter {
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+    private final FrameWriter target;
+    private final BlockingQueue<Snapshot> free;
+    private final BlockingQueue<Snapshot> pending;
+    private final Snapshot endOfStream = new Snapshot();
+    private final Snapshot flushRequest = new Snapshot();
+    private final Semaphore flushed = new Semaphore(0);
+    private final Thread writerThread;
+    private volatile IOException failure;
+    private boolean closed = false;
+
+    /**
+     * Positions of one frame waiting to be written
+     */
+    private static class Snapshot {
+        int n;
+        float[] x = new float[0];
+        float[] y = new float[0];
+        float[] z = new float[0];
+
+        void copy(int n, float[] x, float[] y, float[] z) {
+            if (this.x.length < n) {
+                this.x = new float[n];
+                this.y = new float[n];
+                this.z = new float[n];
+            }
+            System.arraycopy(x, 0, this.x, 0, n);
+            System.arraycopy(y, 0, this.y, 0, n);
+            System.arraycopy(z, 0, this.z, 0, n);
+            this.n = n;
+        }
+    }
+
+    public AsyncFrameWriter(FrameWriter target) {
+        this(target, DEFAULT_BUFFER_COUNT);
+    }
+
+    public AsyncFrameWriter(FrameWriter target, int bufferCount) {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Buffer count must be at least 1");
+        }
+        this.target = target;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        this.pending = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int b = 0; b < bufferCount; b++) {
+            free.add(new Snapshot());
+        }
+        this.writerThread = new Thread(this::drain, "frame-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Written directly by the calling thread, so it must be called before the first frame
+     */
+    @Override
+    public void writeHeader(int particleCount, int frameCount, int[] box, List<RigidSphere3D> spheres) throws IOException {
+        target.writeHeader(particleCount, frameCount, box, spheres);
+    }
+
+    @Override
+    public void writeFrame(int n, float[] x, float[] y, float[] z) throws IOException {
+        checkFailure();
+        Snapshot snapshot = takeFree();
+        snapshot.copy(n, x, y, z);
+        put(snapshot);
+    }
+
+    /**
+     * Waits until the queued frames have been written and the target writer has been flushed
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        put(flushRequest);
+        try {
+            flushed.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the frame writer");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits for the queued frames to be written, then closes the target writer
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            put(endOfStream);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the frame writer");
+        } finally {
+            target.close();
+        }
+        checkFailure();
+    }
+
+    private void drain() {
+        while (true) {
+            Snapshot snapshot;
+            try {
+                snapshot = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (snapshot == endOfStream) {
+                return;
+            }
+            if (snapshot == flushRequest) {
+                if (failure == null) {
+                    try {
+                        target.flush();
+                    } catch (Throwable e) {
+                        fail(e);
+                    }
+                }
+                flushed.release();
+                continue;
+            }
+            // After a failure of any kind the frames are dropped but the buffers are still recycled and the flush
+            // and end-of-stream requests still answered, so the solver never hangs
+            if (failure == null) {
+                try {
+                    target.writeFrame(snapshot.n, snapshot.x, snapshot.y, snapshot.z);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+            free.add(snapshot);
+        }
+    }
+
+    /**
+     * Record the failure of the target writer, reported to the solver by its next call
+     */
+    private void fail(Throwable e) {
+        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Frame writer failed", e);
+        }
+    }
+
+    private Snapshot takeFree() throws InterruptedIOException {
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a frame buffer");
+        }
+    }
+
+    private void put(Snapshot snapshot) throws InterruptedIOException {
+        try {
+            pending.put(snapshot);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a frame");
+        }
+    }
+}
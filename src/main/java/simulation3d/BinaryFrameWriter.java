@@ -0,0 +1,166 @@
+package simulation3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Compact binary frame output, written through a file channel from a large direct buffer.
+ * All values are little-endian:
+ * <pre>
+ * header:  int32 magic "FLF3", int32 version, int32 particleCount, int32 frameCount,
+ *          float32 boxX, boxY, boxZ, int32 sphereCount, sphereCount x (float32 x, y, z, radius)
+ * frame:   int32 n, n x (float32 x, y, z)
+ * </pre>
+ * frameCount is rewritten with the number of frames actually written when the writer is closed, and the
+ * {@link FrameIndex} is appended then, so {@link FrameArchive} finds any frame without reading the ones before it.
+ * Files of version 1 and files that were never closed have no index.
+ */
+public class BinaryFrameWriter implements FrameWriter {
+    public static final int MAGIC = 0x33464C46; // "FLF3" read as little-endian bytes
+    public static final int VERSION = 2;
+    private static final int VERSION_OFFSET = 4;
+    private static final int FRAME_COUNT_OFFSET = 12;
+    private static final int DEFAULT_BUFFER_SIZE = 8 << 20;
+    private static final int BYTES_PER_PARTICLE = 3 * Float.BYTES;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long bufferStart; // File position of the first byte in the buffer
+    private final FrameIndex index; // Frames written so far
+
+    public BinaryFrameWriter(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BinaryFrameWriter(Path path, int bufferSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), bufferSize, 0, new FrameIndex());
+    }
+
+    private BinaryFrameWriter(FileChannel channel, int bufferSize, long position, FrameIndex index) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("Buffer size is too small");
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.bufferStart = position;
+        this.index = index;
+    }
+
+    /**
+     * Reopen an existing output file to continue after its first frames, dropping everything written after them,
+     * the index included. The header is kept, so writeHeader must not be called on the returned writer.
+     */
+    public static BinaryFrameWriter resume(Path path, int frames) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(8 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) < 1 || header.getInt(4) > VERSION) {
+                throw new IOException("Not a frame file: " + path);
+            }
+            long position = header.capacity() + 4L * Float.BYTES * header.getInt(7 * Integer.BYTES);
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            FrameIndex index = new FrameIndex();
+            for (int f = 0; f < frames; f++) {
+                readFully(channel, count, position);
+                index.add(position, count.getInt(0));
+                position += Integer.BYTES + (long) BYTES_PER_PARTICLE * count.getInt(0);
+            }
+            if (position > channel.size()) {
+                throw new IOException("Frame file holds fewer than " + frames + " frames: " + path);
+            }
+            channel.truncate(position);
+            channel.position(position);
+            return new BinaryFrameWriter(channel, DEFAULT_BUFFER_SIZE, position, index);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeHeader(int particleCount, int frameCount, int[] box, List<RigidSphere3D> spheres) throws IOException {
+        ensureRemaining(8 * Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(particleCount);
+        buffer.putInt(frameCount);
+        buffer.putFloat(box[0]);
+        buffer.putFloat(box[1]);
+        buffer.putFloat(box[2]);
+        buffer.putInt(spheres.size());
+        for (RigidSphere3D sphere : spheres) {
+            ensureRemaining(4 * Float.BYTES);
+            buffer.putFloat((float) sphere.center.getX());
+            buffer.putFloat((float) sphere.center.getY());
+            buffer.putFloat((float) sphere.center.getZ());
+            buffer.putFloat(sphere.radius);
+        }
+    }
+
+    @Override
+    public void writeFrame(int n, float[] x, float[] y, float[] z) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        index.add(bufferStart + buffer.position(), n);
+        buffer.putInt(n);
+        int i = 0;
+        while (i < n) {
+            ensureRemaining(BYTES_PER_PARTICLE);
+            int end = Math.min(n, i + buffer.remaining() / BYTES_PER_PARTICLE);
+            for (; i < end; i++) {
+                buffer.putFloat(x[i]);
+                buffer.putFloat(y[i]);
+                buffer.putFloat(z[i]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer trailer = index.encode(bufferStart);
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            value.putInt(0, index.size);
+            channel.write(value, FRAME_COUNT_OFFSET);
+            // A resumed file of version 1 now has an index too
+            value.putInt(0, VERSION);
+            value.clear();
+            channel.write(value, VERSION_OFFSET);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        target.clear();
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of frame file");
+            }
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bufferStart += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
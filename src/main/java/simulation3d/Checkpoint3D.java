@@ -0,0 +1,261 @@
+package simulation3d;
+
+import core.SpringTable;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot of the complete {@link Fluid3D} state between two steps, from which a simulation continues bit-exactly.
+ * The file holds the box size, the variadic parameters, the neighbor skin, relaxation mode, time step, reordering,
+ * particle lifetime and deterministic mode, the step and frame counters, every particle with its previous position,
+ * velocity and age, the springs in table order, the rigid spheres, the emitters and the sinks.
+ */
+public class Checkpoint3D {
+    public static final int MAGIC = 0x464C4350; // "FLCP"
+    public static final int VERSION = 8;
+    public final Fluid3D fluid;
+    public final int[] box; // Box size along x, y and z
+    public final int step; // Steps simulated when the checkpoint was taken
+    public final int frame; // Frames written when the checkpoint was taken
+
+    private Checkpoint3D(Fluid3D fluid, int[] box, int step, int frame) {
+        this.fluid = fluid;
+        this.box = box;
+        this.step = step;
+        this.frame = frame;
+    }
+
+    /**
+     * Write a checkpoint of the fluid. The data goes to a temporary file next to the target, which then replaces
+     * the target in one move, so a crash while writing never damages the previous checkpoint. The directory is synced
+     * after the move so that a crash after write returns never brings the previous checkpoint back.
+     */
+    public static void write(Path path, Fluid3D fluid, int[] box, int step, int frame) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+            writeState(out, fluid, box, step, frame);
+            out.flush();
+            file.getFD().sync();
+        }
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(absolute.getParent());
+    }
+
+    /**
+     * Sync the directory entries, so the move of a new checkpoint survives a crash. Some platforms, Windows among
+     * them, cannot open a directory; there the move is left to the file system.
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read a checkpoint into a new fluid. Fluid3D.h is set from the checkpoint before the fluid is created.
+     */
+    public static Checkpoint3D read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int[] box = {in.readInt(), in.readInt(), in.readInt()};
+            int step = in.readInt();
+            int frame = in.readInt();
+
+            Fluid3D.h = in.readFloat();
+            Fluid3D fluid = new Fluid3D();
+            fluid.gravity = new Vector3D(in.readDouble(), in.readDouble(), in.readDouble());
+            fluid.alpha = in.readFloat();
+            fluid.delta = in.readFloat();
+            fluid.beta = in.readFloat();
+            fluid.setNeighborSkin(in.readFloat());
+            fluid.setJacobiRelaxation(in.readBoolean());
+            fluid.setRelaxationIterations(in.readInt());
+            // The step goes last, switching the adaptive step off would replace it
+            float timeStep = in.readFloat();
+            fluid.setAdaptiveTimeStep(in.readBoolean());
+            fluid.setMaxTimeStep(in.readFloat());
+            fluid.setTimeStep(timeStep);
+            fluid.setReorderInterval(in.readInt());
+            fluid.setStepsSinceReorder(in.readInt());
+            fluid.setMaxParticleAge(in.readFloat());
+            fluid.setDeterministic(in.readBoolean());
+
+            ParticleStore3D particles = fluid.getParticleStore();
+            int particleCount = in.readInt();
+            for (int i = 0; i < particleCount; i++) {
+                int p = particles.add(in.readFloat(), in.readFloat(), in.readFloat());
+                particles.px[p] = in.readFloat();
+                particles.py[p] = in.readFloat();
+                particles.pz[p] = in.readFloat();
+                particles.vx[p] = in.readFloat();
+                particles.vy[p] = in.readFloat();
+                particles.vz[p] = in.readFloat();
+                particles.pressure[p] = in.readFloat();
+                particles.age[p] = in.readFloat();
+            }
+
+            SpringTable springs = fluid.getSprings();
+            int springCount = in.readInt();
+            for (int s = 0; s < springCount; s++) {
+                springs.add(in.readInt(), in.readInt(), in.readFloat());
+            }
+
+            int sphereCount = in.readInt();
+            for (int s = 0; s < sphereCount; s++) {
+                Vector3D center = readVector(in);
+                float radius = in.readFloat();
+                RigidSphere3D sphere = new RigidSphere3D(center, radius);
+                sphere.mass = in.readFloat();
+                sphere.movable = in.readBoolean();
+                sphere.velocity = readVector(in);
+                sphere.red = in.readInt();
+                sphere.green = in.readInt();
+                sphere.blue = in.readInt();
+                fluid.getRigidSpheres().add(sphere);
+            }
+
+            int emitterCount = in.readInt();
+            for (int e = 0; e < emitterCount; e++) {
+                Emitter3D emitter = new Emitter3D(Emitter3D.Shape.values()[in.readInt()], readVector(in),
+                        in.readFloat(), in.readFloat(), in.readFloat(), readVector(in), in.readFloat());
+                emitter.pending = in.readFloat();
+                emitter.emitted = in.readLong();
+                fluid.addEmitter(emitter);
+            }
+
+            int sinkCount = in.readInt();
+            for (int s = 0; s < sinkCount; s++) {
+                fluid.addSink(new Sink3D(in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readFloat(), in.readFloat(), in.readFloat()));
+            }
+            return new Checkpoint3D(fluid, box, step, frame);
+        }
+    }
+
+    private static void writeState(DataOutputStream out, Fluid3D fluid, int[] box, int step, int frame) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(box[0]);
+        out.writeInt(box[1]);
+        out.writeInt(box[2]);
+        out.writeInt(step);
+        out.writeInt(frame);
+
+        out.writeFloat(Fluid3D.h);
+        writeVector(out, fluid.gravity);
+        out.writeFloat(fluid.alpha);
+        out.writeFloat(fluid.delta);
+        out.writeFloat(fluid.beta);
+        out.writeFloat(fluid.getNeighborSkin());
+        out.writeBoolean(fluid.isJacobiRelaxation());
+        out.writeInt(fluid.getRelaxationIterations());
+        out.writeFloat(fluid.getTimeStep());
+        out.writeBoolean(fluid.isAdaptiveTimeStep());
+        out.writeFloat(fluid.getMaxTimeStep());
+        out.writeInt(fluid.getReorderInterval());
+        out.writeInt(fluid.getStepsSinceReorder());
+        out.writeFloat(fluid.getMaxParticleAge());
+        out.writeBoolean(fluid.isDeterministic());
+
+        ParticleStore3D particles = fluid.getParticleStore();
+        out.writeInt(particles.size());
+        for (int i = 0; i < particles.size(); i++) {
+            out.writeFloat(particles.x[i]);
+            out.writeFloat(particles.y[i]);
+            out.writeFloat(particles.z[i]);
+            out.writeFloat(particles.px[i]);
+            out.writeFloat(particles.py[i]);
+            out.writeFloat(particles.pz[i]);
+            out.writeFloat(particles.vx[i]);
+            out.writeFloat(particles.vy[i]);
+            out.writeFloat(particles.vz[i]);
+            out.writeFloat(particles.pressure[i]);
+            out.writeFloat(particles.age[i]);
+        }
+
+        SpringTable springs = fluid.getSprings();
+        out.writeInt(springs.size());
+        for (int s = 0; s < springs.size(); s++) {
+            out.writeInt(springs.first[s]);
+            out.writeInt(springs.second[s]);
+            out.writeFloat(springs.restLength[s]);
+        }
+
+        out.writeInt(fluid.getRigidSpheres().size());
+        for (RigidSphere3D sphere : fluid.getRigidSpheres()) {
+            writeVector(out, sphere.center);
+            out.writeFloat(sphere.radius);
+            out.writeFloat(sphere.mass);
+            out.writeBoolean(sphere.movable);
+            writeVector(out, sphere.velocity);
+            out.writeInt(sphere.red);
+            out.writeInt(sphere.green);
+            out.writeInt(sphere.blue);
+        }
+
+        out.writeInt(fluid.getEmitters().size());
+        for (Emitter3D emitter : fluid.getEmitters()) {
+            out.writeInt(emitter.shape.ordinal());
+            writeVector(out, emitter.center);
+            out.writeFloat(emitter.width);
+            out.writeFloat(emitter.height);
+            out.writeFloat(emitter.length);
+            writeVector(out, emitter.velocity);
+            out.writeFloat(emitter.rate);
+            out.writeFloat(emitter.pending);
+            out.writeLong(emitter.emitted);
+        }
+
+        out.writeInt(fluid.getSinks().size());
+        for (Sink3D sink : fluid.getSinks()) {
+            out.writeFloat(sink.minX);
+            out.writeFloat(sink.minY);
+            out.writeFloat(sink.minZ);
+            out.writeFloat(sink.maxX);
+            out.writeFloat(sink.maxY);
+            out.writeFloat(sink.maxZ);
+        }
+    }
+
+    private static void writeVector(DataOutputStream out, Vector3D v) throws IOException {
+        out.writeDouble(v.getX());
+        out.writeDouble(v.getY());
+        out.writeDouble(v.getZ());
+    }
+
+    private static Vector3D readVector(DataInputStream in) throws IOException {
+        return new Vector3D(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
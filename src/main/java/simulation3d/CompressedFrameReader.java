@@ -0,0 +1,277 @@
+package simulation3d;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the frames of a {@link CompressedFrameWriter} file. A frame is decoded from the keyframe before
+ * it, or from the last frame read if that is on the way, so playing forward decodes every frame once. Files that
+ * were never closed are indexed by one pass over the frame headers when opened; a last frame that was cut off is
+ * left out. A reader keeps the last frame it decoded, so threads should each open their own.
+ */
+public class CompressedFrameReader implements Closeable {
+    public final float[] box = new float[3]; // Box size along x, y and z
+    public final float[] quantum = new float[3]; // Quantum of the positions along x, y and z
+    public final float[] spheres; // Center x, y, z and radius of each rigid sphere
+    public final int keyframeInterval;
+    private final FileChannel channel;
+    private final boolean deflated;
+    private final boolean indexed;
+    private final FrameIndex index;
+    private final int[][] state = new int[3][0]; // Quantized positions of the decoded frame
+    private int stateFrame = -1; // Frame held by state, -1 if none
+    private byte[] stored = new byte[0];
+    private byte[] encoded = new byte[0];
+    private final Inflater inflater = new Inflater();
+
+    public CompressedFrameReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = FrameIndex.readFully(channel, 0, CompressedFrameWriter.HEADER_BYTES);
+            if (header.getInt(0) != CompressedFrameWriter.MAGIC
+                    || header.getInt(4) != CompressedFrameWriter.VERSION) {
+                throw new IOException("Not a compressed frame file: " + path);
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = header.getFloat((4 + axis) * Float.BYTES);
+                quantum[axis] = header.getFloat((7 + axis) * Float.BYTES);
+            }
+            this.keyframeInterval = header.getInt(10 * Integer.BYTES);
+            this.deflated = (header.getInt(11 * Integer.BYTES) & CompressedFrameWriter.FLAG_DEFLATE) != 0;
+            int sphereCount = header.getInt(12 * Integer.BYTES);
+            long framesStart = CompressedFrameWriter.HEADER_BYTES + 4L * Float.BYTES * sphereCount;
+            if (keyframeInterval < 1 || !(quantum[0] > 0 && quantum[1] > 0 && quantum[2] > 0)) {
+                throw new IOException("Not a compressed frame file: " + path);
+            }
+            if (sphereCount < 0 || framesStart > size) {
+                throw new IOException("Frame file is cut off: " + path);
+            }
+            this.spheres = new float[4 * sphereCount];
+            FrameIndex.readFully(channel, CompressedFrameWriter.HEADER_BYTES, 4 * Float.BYTES * sphereCount)
+                    .asFloatBuffer().get(spheres);
+
+            // Take the index at the end if it is complete, otherwise walk the frames
+            FrameIndex index = FrameIndex.read(channel, framesStart);
+            this.indexed = index != null;
+            if (index == null) {
+                index = new FrameIndex();
+                long position = framesStart;
+                while (position + CompressedFrameWriter.FRAME_HEADER_BYTES <= size) {
+                    ByteBuffer frame = readFrameHeader(position);
+                    long end = position + CompressedFrameWriter.FRAME_HEADER_BYTES + frame.getInt(8);
+                    if (frame.getInt(0) < 0 || frame.getInt(4) < 0 || frame.getInt(8) < 0 || end > size) {
+                        break;
+                    }
+                    index.add(position, frame.getInt(0));
+                    position = end;
+                }
+            }
+            this.index = index;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer readFrameHeader(long position) throws IOException {
+        return FrameIndex.readFully(channel, position, CompressedFrameWriter.FRAME_HEADER_BYTES);
+    }
+
+    public int getFrameCount() {
+        return index.size;
+    }
+
+    /**
+     * Whether the file had an index, otherwise the frames were found by walking through the file
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public boolean isDeflated() {
+        return deflated;
+    }
+
+    public int getParticleCount(int frame) {
+        checkFrame(frame);
+        return index.particles[frame];
+    }
+
+    long frameOffset(int frame) {
+        return index.offsets[frame];
+    }
+
+    /**
+     * File position after the frame
+     */
+    long frameEnd(int frame) throws IOException {
+        ByteBuffer header = readFrameHeader(index.offsets[frame]);
+        return index.offsets[frame] + CompressedFrameWriter.FRAME_HEADER_BYTES + header.getInt(8);
+    }
+
+    /**
+     * Positions of the frame, x, y and z of each particle in turn
+     */
+    public FloatBuffer positions(int frame) throws IOException {
+        decodeTo(frame);
+        int n = index.particles[frame];
+        FloatBuffer positions = FloatBuffer.allocate(3 * n);
+        for (int i = 0; i < n; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                positions.put((float) (state[axis][i] * (double) quantum[axis]));
+            }
+        }
+        positions.flip();
+        return positions;
+    }
+
+    /**
+     * Copy of the quantized positions of the frame along x, y and z
+     */
+    int[][] quantized(int frame) throws IOException {
+        decodeTo(frame);
+        int n = index.particles[frame];
+        return new int[][]{Arrays.copyOf(state[0], n), Arrays.copyOf(state[1], n),
+                Arrays.copyOf(state[2], n)};
+    }
+
+    private void decodeTo(int frame) throws IOException {
+        checkFrame(frame);
+        int start = stateFrame >= frame - frame % keyframeInterval && stateFrame <= frame ? stateFrame + 1
+                : frame - frame % keyframeInterval;
+        for (int f = start; f <= frame; f++) {
+            decode(f);
+        }
+    }
+
+    /**
+     * Decode frame f over the state of frame f - 1, or from scratch if f is a keyframe
+     */
+    private void decode(int f) throws IOException {
+        ByteBuffer header = readFrameHeader(index.offsets[f]);
+        int n = header.getInt(0);
+        int encodedLength = header.getInt(4);
+        int storedLength = header.getInt(8);
+        if (stored.length < storedLength) {
+            stored = new byte[storedLength];
+        }
+        ByteBuffer target = ByteBuffer.wrap(stored, 0, storedLength);
+        long position = index.offsets[f] + CompressedFrameWriter.FRAME_HEADER_BYTES;
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of frame file");
+            }
+        }
+
+        byte[] bytes = stored;
+        if (deflated) {
+            if (encoded.length < encodedLength) {
+                encoded = new byte[encodedLength];
+            }
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            try {
+                if (inflater.inflate(encoded, 0, encodedLength) != encodedLength || !inflater.finished()) {
+                    throw new IOException("Frame " + f + " is damaged");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Frame " + f + " is damaged", e);
+            }
+            bytes = encoded;
+        } else if (encodedLength != storedLength) {
+            throw new IOException("Frame " + f + " is damaged");
+        }
+
+        int base = f % keyframeInterval == 0 ? 0 : Math.min(n, index.particles[f - 1]);
+        if (state[0].length < n) {
+            for (int axis = 0; axis < 3; axis++) {
+                state[axis] = Arrays.copyOf(state[axis], n);
+            }
+        }
+        stateFrame = -1;
+        try {
+            int read = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                read = CompressedFrameWriter.decode(bytes, read, state[axis], state[axis], base, n);
+            }
+            if (read != encodedLength) {
+                throw new IOException("Frame " + f + " is damaged");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Frame " + f + " is damaged", e);
+        }
+        stateFrame = f;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= index.size) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + index.size);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Decompress a compressed frame file into the plain binary format of {@link BinaryFrameWriter}
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: CompressedFrameReader compressed-file output-file");
+            System.exit(-1);
+        }
+        try (CompressedFrameReader reader = new CompressedFrameReader(Paths.get(args[0]));
+             BinaryFrameWriter writer = new BinaryFrameWriter(Paths.get(args[1]))) {
+            List<RigidSphere3D> spheres = new ArrayList<>();
+            for (int s = 0; s < reader.spheres.length; s += 4) {
+                spheres.add(new RigidSphere3D(new Vector3D(reader.spheres[s], reader.spheres[s + 1],
+                        reader.spheres[s + 2]), reader.spheres[s + 3]));
+            }
+            int frameCount = reader.getFrameCount();
+            writer.writeHeader(frameCount > 0 ? reader.getParticleCount(0) : 0, frameCount,
+                    new int[]{(int) reader.box[0], (int) reader.box[1], (int) reader.box[2]}, spheres);
+            float[] x = new float[0];
+            float[] y = new float[0];
+            float[] z = new float[0];
+            for (int f = 0; f < frameCount; f++) {
+                FloatBuffer positions = reader.positions(f);
+                int n = positions.limit() / 3;
+                if (x.length < n) {
+                    x = new float[n];
+                    y = new float[n];
+                    z = new float[n];
+                }
+                for (int i = 0; i < n; i++) {
+                    x[i] = positions.get();
+                    y[i] = positions.get();
+                    z[i] = positions.get();
+                }
+                writer.writeFrame(n, x, y, z);
+            }
+            System.out.println(String.format("%d frames, %d bytes compressed", frameCount,
+                    Files.size(Paths.get(args[0]))));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Frame File Invalid!");
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package simulation3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Compressed binary frame output. Positions are quantized to a fixed fraction of the box size and every frame is
+ * stored as the differences to the frame before, which are small since particles move a fraction of h per frame,
+ * packed into variable-length integers. Every keyframeInterval-th frame is stored whole, so a reader can start
+ * decoding there. With the deflate stage each frame is also compressed on its own by a {@link Deflater}.
+ * All values are little-endian:
+ * <pre>
+ * header: int32 magic "FLC3", int32 version, int32 particleCount, int32 frameCount,
+ *         float32 boxX, boxY, boxZ, float32 quantumX, quantumY, quantumZ, int32 keyframeInterval, int32 flags,
+ *         int32 sphereCount, sphereCount x (float32 x, y, z, radius)
+ * frame:  int32 n, int32 encodedLength, int32 storedLength, storedLength bytes
+ * </pre>
+ * An encoded frame holds the zigzag varint differences of all x, then all y, then all z. Keyframes and particles
+ * beyond the count of the frame before are differenced against 0. Flag 1 marks deflated frames, whose stored bytes
+ * inflate to the encodedLength encoded ones. frameCount is rewritten and the {@link FrameIndex} appended when the
+ * writer is closed. {@link CompressedFrameReader} decodes the frames.
+ */
+public class CompressedFrameWriter implements FrameWriter {
+    public static final int MAGIC = 0x33434C46; // "FLC3" read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int FLAG_DEFLATE = 1;
+    public static final float DEFAULT_PRECISION = 1e-5F;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+    static final int HEADER_BYTES = 13 * Integer.BYTES;
+    static final int FRAME_HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int FRAME_COUNT_OFFSET = 12;
+    private static final int DEFAULT_BUFFER_SIZE = 8 << 20;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long bufferStart; // File position of the first byte in the buffer
+    private final FrameIndex index; // Frames written so far
+    private final float precision; // Quantum as a fraction of the box size
+    private final float[] quantum = new float[3]; // Quantum along x, y and z
+    private final int keyframeInterval;
+    private final Deflater deflater; // null without the deflate stage
+    private int[][] previous = new int[3][0]; // Quantized positions of the last frame
+    private int previousCount = 0;
+    private int[][] current = new int[3][0];
+    private byte[] encoded = new byte[0];
+    private byte[] deflated = new byte[0];
+
+    /**
+     * Create a new output file
+     *
+     * @param precision        quantum of the positions as a fraction of the box size
+     * @param keyframeInterval frames from one keyframe to the next
+     * @param deflate          whether to compress every frame with a Deflater
+     */
+    public CompressedFrameWriter(Path path, float precision, int keyframeInterval, boolean deflate) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), 0, new FrameIndex(), precision, keyframeInterval, deflate);
+    }
+
+    private CompressedFrameWriter(FileChannel channel, long position, FrameIndex index, float precision,
+                                  int keyframeInterval, boolean deflate) {
+        if (!(precision > 0 && precision < 1)) {
+            throw new IllegalArgumentException("Precision must be between 0 and 1");
+        }
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.bufferStart = position;
+        this.index = index;
+        this.precision = precision;
+        this.keyframeInterval = keyframeInterval;
+        this.deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+    }
+
+    /**
+     * Reopen an existing output file to continue after its first frames, dropping everything written after them,
+     * the index included. The header is kept, so writeHeader must not be called on the returned writer.
+     */
+    public static CompressedFrameWriter resume(Path path, int frames) throws IOException {
+        FrameIndex index = new FrameIndex();
+        long end;
+        CompressedFrameWriter writer;
+        int[][] last;
+        try (CompressedFrameReader reader = new CompressedFrameReader(path)) {
+            if (reader.getFrameCount() < frames) {
+                throw new IOException("Frame file holds fewer than " + frames + " frames: " + path);
+            }
+            end = HEADER_BYTES + (long) Float.BYTES * reader.spheres.length;
+            for (int f = 0; f < frames; f++) {
+                index.add(reader.frameOffset(f), reader.getParticleCount(f));
+                end = reader.frameEnd(f);
+            }
+            last = frames > 0 ? reader.quantized(frames - 1) : new int[3][0];
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writer = new CompressedFrameWriter(channel, end, index, reader.quantum[0] / reader.box[0],
+                    reader.keyframeInterval, reader.isDeflated());
+            System.arraycopy(reader.quantum, 0, writer.quantum, 0, 3);
+        }
+        try {
+            writer.channel.truncate(end);
+            writer.channel.position(end);
+        } catch (IOException e) {
+            writer.channel.close();
+            throw e;
+        }
+        writer.previous = last;
+        writer.previousCount = frames > 0 ? index.particles[frames - 1] : 0;
+        return writer;
+    }
+
+    @Override
+    public void writeHeader(int particleCount, int frameCount, int[] box, List<RigidSphere3D> spheres) throws IOException {
+        for (int axis = 0; axis < 3; axis++) {
+            quantum[axis] = box[axis] * precision;
+        }
+        ensureRemaining(HEADER_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(particleCount);
+        buffer.putInt(frameCount);
+        buffer.putFloat(box[0]);
+        buffer.putFloat(box[1]);
+        buffer.putFloat(box[2]);
+        buffer.putFloat(quantum[0]);
+        buffer.putFloat(quantum[1]);
+        buffer.putFloat(quantum[2]);
+        buffer.putInt(keyframeInterval);
+        buffer.putInt(deflater != null ? FLAG_DEFLATE : 0);
+        buffer.putInt(spheres.size());
+        for (RigidSphere3D sphere : spheres) {
+            ensureRemaining(4 * Float.BYTES);
+            buffer.putFloat((float) sphere.center.getX());
+            buffer.putFloat((float) sphere.center.getY());
+            buffer.putFloat((float) sphere.center.getZ());
+            buffer.putFloat(sphere.radius);
+        }
+    }
+
+    @Override
+    public void writeFrame(int n, float[] x, float[] y, float[] z) throws IOException {
+        if (current[0].length < n) {
+            current = new int[3][n];
+        }
+        if (encoded.length < 15 * n) {
+            encoded = new byte[15 * n];
+        }
+        // Keyframes and new particles are differenced against 0
+        int base = index.size % keyframeInterval == 0 ? 0 : Math.min(n, previousCount);
+        float[][] positions = {x, y, z};
+        int length = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            quantize(positions[axis], quantum[axis], n, current[axis]);
+            length = encode(current[axis], previous[axis], base, n, encoded, length);
+        }
+
+        byte[] stored = encoded;
+        int storedLength = length;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(encoded, 0, length);
+            deflater.finish();
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == deflated.length) {
+                    deflated = Arrays.copyOf(deflated, Math.max(1 << 16, 2 * deflated.length));
+                }
+                storedLength += deflater.deflate(deflated, storedLength, deflated.length - storedLength);
+            }
+            stored = deflated;
+        }
+
+        ensureRemaining(FRAME_HEADER_BYTES);
+        index.add(bufferStart + buffer.position(), n);
+        buffer.putInt(n);
+        buffer.putInt(length);
+        buffer.putInt(storedLength);
+        for (int offset = 0; offset < storedLength; ) {
+            ensureRemaining(1);
+            int chunk = Math.min(buffer.remaining(), storedLength - offset);
+            buffer.put(stored, offset, chunk);
+            offset += chunk;
+        }
+
+        int[][] swap = previous;
+        previous = current;
+        current = swap;
+        previousCount = n;
+    }
+
+    static void quantize(float[] values, float quantum, int n, int[] quantized) {
+        double scale = 1.0 / quantum;
+        for (int i = 0; i < n; i++) {
+            quantized[i] = (int) Math.round(values[i] * scale);
+        }
+    }
+
+    /**
+     * Append the zigzag varint differences of the first n values to the first base values of previous, or to 0
+     * beyond them, and return the new length
+     */
+    static int encode(int[] values, int[] previous, int base, int n, byte[] out, int length) {
+        for (int i = 0; i < n; i++) {
+            int difference = values[i] - (i < base ? previous[i] : 0);
+            int v = (difference << 1) ^ (difference >> 31);
+            while ((v & ~0x7F) != 0) {
+                out[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out[length++] = (byte) v;
+        }
+        return length;
+    }
+
+    /**
+     * Inverse of {@link #encode}; values may be previous, which is then updated in place. Returns the position after
+     * the decoded bytes.
+     */
+    static int decode(byte[] in, int position, int[] values, int[] previous, int base, int n) {
+        for (int i = 0; i < n; i++) {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[position++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int difference = (v >>> 1) ^ -(v & 1);
+            values[i] = difference + (i < base ? previous[i] : 0);
+        }
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer trailer = index.encode(bufferStart);
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            count.putInt(0, index.size);
+            channel.write(count, FRAME_COUNT_OFFSET);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            channel.close();
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bufferStart += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,89 @@
+package simulation3d;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Source that adds particles to a {@link Fluid3D} at a steady rate, all with the same initial velocity.
+ * The particles are spread over a box or a ball around the center along a low-discrepancy sequence, so the emission
+ * needs no random state and a run is reproducible from the emitter fields alone.
+ */
+public class Emitter3D {
+    public enum Shape { BOX, BALL }
+
+    private static final double SPREAD_X = 0.8191725133961645; // R3 sequence steps, from the root of x^4 = x + 1
+    private static final double SPREAD_Y = 0.6710436067037893;
+    private static final double SPREAD_Z = 0.5497004779019703;
+
+    public final Shape shape;
+    public final Vector3D center;
+    public final float width; // Extent along x of the box, or diameter of the ball
+    public final float height; // Extent along y of the box, unused for the ball
+    public final float length; // Extent along z of the box, unused for the ball
+    public final Vector3D velocity; // Initial velocity of every emitted particle
+    public final float rate; // Particles per unit of simulated time
+    public float pending = 0; // Fraction of a particle left over from the previous steps
+    public long emitted = 0; // Particles emitted so far, the position in the spread sequence
+
+    public Emitter3D(Shape shape, Vector3D center, float width, float height, float length, Vector3D velocity,
+                     float rate) {
+        if (!(rate >= 0) || !(width >= 0) || !(height >= 0) || !(length >= 0)) {
+            throw new IllegalArgumentException("Emitter rate and size must not be negative");
+        }
+        this.shape = shape;
+        this.center = center;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.velocity = velocity;
+        this.rate = rate;
+    }
+
+    /**
+     * Emitter spreading the particles over the width x height x length box centered at center
+     */
+    public static Emitter3D box(Vector3D center, float width, float height, float length, Vector3D velocity,
+                                float rate) {
+        return new Emitter3D(Shape.BOX, center, width, height, length, velocity, rate);
+    }
+
+    /**
+     * Emitter spreading the particles over the ball of the given radius around center
+     */
+    public static Emitter3D ball(Vector3D center, float radius, Vector3D velocity, float rate) {
+        return new Emitter3D(Shape.BALL, center, 2 * radius, 2 * radius, 2 * radius, velocity, rate);
+    }
+
+    /**
+     * Number of particles to emit in a step of length dt
+     */
+    int take(float dt) {
+        pending += rate * dt;
+        int count = (int) pending;
+        pending -= count;
+        return count;
+    }
+
+    /**
+     * Write the position of the next emitted particle to position and advance the sequence
+     */
+    void next(float[] position) {
+        emitted++;
+        double u = (0.5 + SPREAD_X * emitted) % 1;
+        double v = (0.5 + SPREAD_Y * emitted) % 1;
+        double w = (0.5 + SPREAD_Z * emitted) % 1;
+        if (shape == Shape.BOX) {
+            position[0] = (float) (center.getX() + (u - 0.5) * width);
+            position[1] = (float) (center.getY() + (v - 0.5) * height);
+            position[2] = (float) (center.getZ() + (w - 0.5) * length);
+        } else {
+            // Uniform over the ball volume
+            double r = 0.5 * width * Math.cbrt(u);
+            double cosPolar = 1 - 2 * v;
+            double sinPolar = Math.sqrt(1 - cosPolar * cosPolar);
+            double azimuth = 2 * Math.PI * w;
+            position[0] = (float) (center.getX() + r * sinPolar * Math.cos(azimuth));
+            position[1] = (float) (center.getY() + r * sinPolar * Math.sin(azimuth));
+            position[2] = (float) (center.getZ() + r * cosPolar);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package simulation3d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Random access to the frames of a {@link BinaryFrameWriter} file. The file is memory-mapped in segments of whole
+ * frames and every frame is returned as a read-only view of the mapping, so a frame is reached without reading the
+ * ones before it, only the pages of the frames actually read are loaded and files larger than the memory work too.
+ * Views are independent of each other, so several threads may read frames at once.
+ * <p>
+ * Files without an index, of version 1 or never closed, are indexed by one pass over the frame headers when opened;
+ * a last frame that was cut off is left out.
+ */
+public class FrameArchive implements Closeable {
+    private static final long SEGMENT_SIZE = 1L << 30; // Largest mapping, unless a single frame is larger
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+    private static final int BYTES_PER_PARTICLE = 3 * Float.BYTES;
+    public final float[] box = new float[3]; // Box size along x, y and z
+    public final float[] spheres; // Center x, y, z and radius of each rigid sphere
+    private final FileChannel channel;
+    private final boolean indexed;
+    private final long[] frameOffsets; // File position of each frame
+    private final int[] frameParticles; // Particle count of each frame
+    private final int[] frameSegment; // Mapping holding each frame
+    private final long[] segmentStarts;
+    private final MappedByteBuffer[] segments;
+
+    public FrameArchive(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, HEADER_BYTES);
+            int version = header.getInt(4);
+            if (header.getInt(0) != BinaryFrameWriter.MAGIC || version < 1 || version > BinaryFrameWriter.VERSION) {
+                throw new IOException("Not a frame file: " + path);
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = header.getFloat((4 + axis) * Float.BYTES);
+            }
+            int sphereCount = header.getInt(7 * Integer.BYTES);
+            long framesStart = HEADER_BYTES + 4L * Float.BYTES * sphereCount;
+            if (sphereCount < 0 || framesStart > size) {
+                throw new IOException("Frame file is cut off: " + path);
+            }
+            this.spheres = new float[4 * sphereCount];
+            read(HEADER_BYTES, 4 * Float.BYTES * sphereCount).asFloatBuffer().get(spheres);
+
+            // Take the index at the end if it is complete, otherwise walk the frames
+            FrameIndex index = FrameIndex.read(channel, framesStart);
+            this.indexed = index != null;
+            if (index == null) {
+                index = new FrameIndex();
+                long position = framesStart;
+                while (position + Integer.BYTES <= size) {
+                    int n = read(position, Integer.BYTES).getInt(0);
+                    if (n < 0 || position + frameBytes(n) > size) {
+                        break;
+                    }
+                    index.add(position, n);
+                    position += frameBytes(n);
+                }
+            }
+            int frameCount = index.size;
+            this.frameOffsets = Arrays.copyOf(index.offsets, frameCount);
+            this.frameParticles = Arrays.copyOf(index.particles, frameCount);
+
+            // Group the frames into mappings of at most SEGMENT_SIZE bytes
+            this.frameSegment = new int[frameCount];
+            long[] starts = new long[Math.max(1, frameCount)];
+            long[] ends = new long[Math.max(1, frameCount)];
+            int segmentCount = 0;
+            for (int f = 0; f < frameCount; f++) {
+                long end = frameOffsets[f] + frameBytes(frameParticles[f]);
+                if (end > size) {
+                    throw new IOException("Frame index is damaged: " + path);
+                }
+                if (end - frameOffsets[f] > Integer.MAX_VALUE) {
+                    throw new IOException("Frame " + f + " is too large to map: " + path);
+                }
+                if (segmentCount == 0 || frameOffsets[f] < starts[segmentCount - 1]
+                        || end - starts[segmentCount - 1] > SEGMENT_SIZE) {
+                    starts[segmentCount] = frameOffsets[f];
+                    ends[segmentCount] = end;
+                    segmentCount++;
+                }
+                ends[segmentCount - 1] = Math.max(ends[segmentCount - 1], end);
+                frameSegment[f] = segmentCount - 1;
+            }
+            this.segmentStarts = Arrays.copyOf(starts, segmentCount);
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, starts[s], ends[s] - starts[s]);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long frameBytes(int n) {
+        return Integer.BYTES + (long) BYTES_PER_PARTICLE * n;
+    }
+
+    private ByteBuffer read(long position, int bytes) throws IOException {
+        return FrameIndex.readFully(channel, position, bytes);
+    }
+
+    public int getFrameCount() {
+        return frameOffsets.length;
+    }
+
+    /**
+     * Whether the file had an index, otherwise the frames were found by walking through the file
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public int getParticleCount(int frame) {
+        checkFrame(frame);
+        return frameParticles[frame];
+    }
+
+    /**
+     * Read-only view of the positions of the frame, x, y and z of each particle in turn. Nothing is copied; the view
+     * reads straight from the mapped file.
+     */
+    public FloatBuffer positions(int frame) {
+        checkFrame(frame);
+        ByteBuffer view = segments[frameSegment[frame]].duplicate();
+        int start = (int) (frameOffsets[frame] - segmentStarts[frameSegment[frame]]) + Integer.BYTES;
+        view.position(start);
+        view.limit(start + BYTES_PER_PARTICLE * frameParticles[frame]);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frameOffsets.length) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameOffsets.length);
+        }
+    }
+
+    /**
+     * Close the file. The mappings are released by the garbage collector, so views must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Print the particle count and the center of mass of the frames first to last of a frame file, which are
+     * computed in parallel
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: FrameArchive file [first-frame [last-frame]]");
+            System.exit(-1);
+        }
+        try (FrameArchive archive = new FrameArchive(Paths.get(args[0]))) {
+            int first = 0;
+            int last = archive.getFrameCount() - 1;
+            try {
+                if (args.length >= 2) {
+                    first = Integer.parseInt(args[1]);
+                    last = first;
+                }
+                if (args.length >= 3) {
+                    last = Integer.parseInt(args[2]);
+                }
+            } catch (NumberFormatException e) {
+                first = -1;
+            }
+            if (first < 0 || last >= archive.getFrameCount() || first > last && archive.getFrameCount() > 0) {
+                System.out.println("Frame Range Invalid!");
+                System.exit(-1);
+            }
+            System.out.println(String.format("%d frames%s, box %.0f x %.0f x %.0f, %d spheres",
+                    archive.getFrameCount(), archive.isIndexed() ? "" : " (not indexed)",
+                    archive.box[0], archive.box[1], archive.box[2], archive.spheres.length / 4));
+            double[][] centers = new double[last - first + 1][3];
+            final int from = first;
+            IntStream.rangeClosed(first, last).parallel().forEach(f -> {
+                FloatBuffer positions = archive.positions(f);
+                double[] center = centers[f - from];
+                for (int i = 0; i < positions.limit(); i++) {
+                    center[i % 3] += positions.get(i);
+                }
+            });
+            for (int f = first; f <= last; f++) {
+                int n = archive.getParticleCount(f);
+                double[] center = centers[f - first];
+                System.out.println(String.format("Frame %d: %d particles, center (%.2f, %.2f, %.2f)", f, n,
+                        center[0] / Math.max(1, n), center[1] / Math.max(1, n), center[2] / Math.max(1, n)));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Frame File Invalid!");
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package simulation3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * File position and particle count of every frame of a frame file, stored after the last frame:
+ * <pre>
+ * index:   frameCount x (int64 offset of the frame, int32 n)
+ * trailer: int64 offset of the index, int32 frameCount, int32 magic "FLI3"
+ * </pre>
+ */
+class FrameIndex {
+    static final int MAGIC = 0x33494C46; // "FLI3" read as little-endian bytes
+    static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    long[] offsets = new long[64];
+    int[] particles = new int[64];
+    int size = 0;
+
+    void add(long offset, int n) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * size);
+            particles = Arrays.copyOf(particles, 2 * size);
+        }
+        offsets[size] = offset;
+        particles[size] = n;
+        size++;
+    }
+
+    /**
+     * Index and trailer as written to the file at indexOffset
+     */
+    ByteBuffer encode(long indexOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(size * ENTRY_BYTES + TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int f = 0; f < size; f++) {
+            buffer.putLong(offsets[f]);
+            buffer.putInt(particles[f]);
+        }
+        buffer.putLong(indexOffset);
+        buffer.putInt(size);
+        buffer.putInt(MAGIC);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read the index at the end of the file, or return null if the file has no complete index
+     *
+     * @param framesStart file position of the first frame
+     */
+    static FrameIndex read(FileChannel channel, long framesStart) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize - framesStart < TRAILER_BYTES) {
+            return null;
+        }
+        ByteBuffer trailer = readFully(channel, fileSize - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong(0);
+        int frameCount = trailer.getInt(Long.BYTES);
+        if (trailer.getInt(Long.BYTES + Integer.BYTES) != MAGIC || frameCount < 0 || indexOffset < framesStart
+                || indexOffset + (long) frameCount * ENTRY_BYTES + TRAILER_BYTES != fileSize) {
+            return null;
+        }
+        FrameIndex index = new FrameIndex();
+        index.offsets = new long[frameCount];
+        index.particles = new int[frameCount];
+        ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) frameCount * ENTRY_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int f = 0; f < frameCount; f++) {
+            index.offsets[f] = entries.getLong();
+            index.particles[f] = entries.getInt();
+            if (index.particles[f] < 0 || index.offsets[f] < framesStart || index.offsets[f] >= indexOffset) {
+                throw new IOException("Frame index is damaged");
+            }
+        }
+        index.size = frameCount;
+        return index;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer target = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of frame file");
+            }
+        }
+        target.flip();
+        return target;
+    }
+}
@@ -0,0 +1,28 @@
+package simulation3d;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the frames generated by {@link Simulation3D}.
+ * After flush returns, every frame written so far has been handed to the operating system.
+ */
+public interface FrameWriter extends Closeable, Flushable {
+
+    /**
+     * Write the scene description that precedes the frames
+     *
+     * @param particleCount number of particles in the first frame
+     * @param frameCount    number of frames that will be written
+     * @param box           box size along x, y and z
+     * @param spheres       rigid spheres of the scene
+     */
+    void writeHeader(int particleCount, int frameCount, int[] box, List<RigidSphere3D> spheres) throws IOException;
+
+    /**
+     * Write the positions of the first n particles as one frame
+     */
+    void writeFrame(int n, float[] x, float[] y, float[] z) throws IOException;
+}
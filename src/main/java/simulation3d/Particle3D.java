@@ -2,43 +2,40 @@ package simulation3d;
 
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
+/**
+ * Lightweight view of one particle of a {@link ParticleStore3D}, used by the output writer and the loaders
+ */
 public class Particle3D {
     public static float PARTICLE_RADIUS = 12;
-    public static double h = Fluid3D.h;
     public final int id;
-    public Vector3D position;
-    public Vector3D previousPosition;
-    public Vector3D velocity;
-    public double pressure;
-
-    private List<Particle3D> neighbors;
-    private boolean isNeighborCalculated;
-
-    public Particle3D(Vector3D position, int id) {
-        this.position = position;
-        this.previousPosition = new Vector3D(0, 0, 0);
-        this.velocity = new Vector3D(0, 0, 0);
+    private final ParticleStore3D store;
+
+    public Particle3D(ParticleStore3D store, int id) {
+        this.store = store;
         this.id = id;
     }
 
-    /**
-     * Search for the neighbors of the particle in the given range.
-     */
-    public List<Particle3D> findNeighbors(List<Particle3D> searchRange) {
-        // If already calculated, early return
-        if (isNeighborCalculated) {
-            return this.neighbors;
-        }
-
-        this.isNeighborCalculated = true;
-        this.neighbors = searchRange.stream().filter(p -> Vector3D.distance(p.position, this.position) < h).collect(Collectors.toList());
-        return this.neighbors;
+    public float getX() {
+        return store.x[id];
+    }
+
+    public float getY() {
+        return store.y[id];
+    }
+
+    public float getZ() {
+        return store.z[id];
+    }
+
+    public Vector3D getPosition() {
+        return new Vector3D(store.x[id], store.y[id], store.z[id]);
+    }
+
+    public Vector3D getVelocity() {
+        return new Vector3D(store.vx[id], store.vy[id], store.vz[id]);
     }
 
-    public void cleanNeighbor() {
-        this.isNeighborCalculated = false;
+    public float getPressure() {
+        return store.pressure[id];
     }
 }
@@ -0,0 +1,20 @@
+package simulation3d;
+
+import core.ParticleArrays;
+
+/**
+ * Structure-of-arrays storage of the 3D fluid particles, see {@link ParticleArrays}
+ */
+public class ParticleStore3D extends ParticleArrays {
+
+    public ParticleStore3D() {
+        super(3);
+    }
+
+    /**
+     * Append a resting particle and return its id
+     */
+    public int add(float x, float y, float z) {
+        return add(x, y, z, 0, 0, 0);
+    }
+}
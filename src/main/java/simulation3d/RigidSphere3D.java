@@ -1,11 +1,11 @@
 package simulation3d;
 
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
-import simulation3d.Particle3D;
+
+import java.util.Random;
 
 public class RigidSphere3D {
     Vector3D center;
-    Vector3D previousCenter;
     float radius;
     float mass;
     boolean movable;
@@ -19,10 +19,6 @@ public class RigidSphere3D {
         this.radius = radius;
         this.movable = false;
         this.velocity = new Vector3D(0, 0, 0);
-        // Assign random color for visualization
-        this.red = (int) (Math.random() * 256);
-        this.green = (int) (Math.random() * 256);
-        this.blue = (int) (Math.random() * 256);
     }
 
     public RigidSphere3D(Vector3D center, float radius, float mass) {
@@ -32,23 +28,11 @@ public class RigidSphere3D {
     }
 
     /**
-     * Whether a given particle is inside the sphere or not
-     */
-    public boolean isInside(Particle3D particle) {
-        return Vector3D.distance(this.center, particle.position) < radius;
-    }
-
-    /**
-     * Calculate the normal vector of a particle respect to this sphere
-     */
-    public Vector3D calculateNHat(Particle3D particle) {
-        return particle.position.subtract(this.center).normalize();
-    }
-
-    /**
-     * Extract the particle from the sphere
+     * Assign a random color for visualization
      */
-    public Vector3D extract(Particle3D particle) {
-        return this.center.add(this.calculateNHat(particle).scalarMultiply(this.radius));
+    void paint(Random random) {
+        this.red = random.nextInt(256);
+        this.green = random.nextInt(256);
+        this.blue = random.nextInt(256);
     }
 }
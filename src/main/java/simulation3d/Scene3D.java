@@ -0,0 +1,309 @@
+package simulation3d;
+
+import core.SceneReader;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 3D scene read from a scene file, one shape or setting per line:
+ * <pre>
+ * domain width height length                       # Extent of the box, 200 x 600 x 200 by default
+ * gravity gx gy gz
+ * plasticity alpha
+ * viscosity beta delta                             # Linear and quadratic dependence
+ * time-step dt
+ * max-age t                                        # Lifetime of the particles, 0 keeps them forever
+ * seed n                                           # Seed of the random numbers, also makes the run deterministic
+ * spacing s                                        # Particle spacing of the fills below, 20 by default
+ * box minX minY minZ maxX maxY maxZ                # Fluid filling the box
+ * sphere cx cy cz r                                # Fluid filling the ball
+ * rigid cx cy cz r                                 # Non-movable rigid sphere
+ * movable cx cy cz r mass                          # Movable rigid sphere
+ * emitter box cx cy cz w h l vx vy vz rate
+ * emitter ball cx cy cz r vx vy vz rate
+ * sink minX minY minZ maxX maxY maxZ
+ * </pre>
+ * The scene only keeps the shapes. Their particles are generated when the scene is added to a fluid, straight into its
+ * particle storage after reserving room for all of them, so large scenes load without intermediate objects.
+ */
+public class Scene3D {
+    private static final float DEFAULT_SPACING = 20;
+    public int width = 200; // Domain the coordinates refer to
+    public int height = 600;
+    public int length = 200;
+    public Vector3D gravity = null; // Settings of the fluid, null or NaN keeps its default
+    public float alpha = Float.NaN;
+    public float beta = Float.NaN;
+    public float delta = Float.NaN;
+    public float timeStep = Float.NaN;
+    public float maxParticleAge = Float.NaN;
+    public Long seed = null; // Runs deterministically from this seed, null keeps the fluid as it is
+    private final List<Fill> fills = new ArrayList<>();
+    private final List<RigidSphere3D> rigidSpheres = new ArrayList<>();
+    private final List<Emitter3D> emitters = new ArrayList<>();
+    private final List<Sink3D> sinks = new ArrayList<>();
+
+    /**
+     * Fluid filling a box, or a ball of radius maxX around (minX, minY, minZ), with particles on a cubic lattice
+     */
+    private static class Fill {
+        final boolean ball;
+        final float minX;
+        final float minY;
+        final float minZ;
+        final float maxX;
+        final float maxY;
+        final float maxZ;
+        final float spacing;
+
+        Fill(boolean ball, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float spacing) {
+            this.ball = ball;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+            this.spacing = spacing;
+        }
+    }
+
+    public static Scene3D read(Path path) throws IOException {
+        try (SceneReader reader = SceneReader.open(path)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Bundled scene of the preset model
+     */
+    public static Scene3D preset(int model) throws IOException {
+        try (SceneReader reader = SceneReader.openResource("scenes/3d/model" + model + ".scene")) {
+            return read(reader);
+        }
+    }
+
+    public static Scene3D read(SceneReader reader) throws IOException {
+        Scene3D scene = new Scene3D();
+        float spacing = DEFAULT_SPACING;
+        while (reader.next()) {
+            try {
+                switch (reader.keyword()) {
+                    case "domain":
+                        reader.expectArguments(3);
+                        scene.width = (int) positive(reader, 0);
+                        scene.height = (int) positive(reader, 1);
+                        scene.length = (int) positive(reader, 2);
+                        if (scene.width <= 0 || scene.height <= 0 || scene.length <= 0) {
+                            throw reader.error("domain must not be empty");
+                        }
+                        break;
+                    case "gravity":
+                        reader.expectArguments(3);
+                        scene.gravity = new Vector3D(reader.number(0), reader.number(1), reader.number(2));
+                        break;
+                    case "plasticity":
+                        reader.expectArguments(1);
+                        scene.alpha = reader.number(0);
+                        break;
+                    case "viscosity":
+                        reader.expectArguments(2);
+                        scene.beta = reader.number(0);
+                        scene.delta = reader.number(1);
+                        break;
+                    case "time-step":
+                        reader.expectArguments(1);
+                        scene.timeStep = positive(reader, 0);
+                        break;
+                    case "max-age":
+                        reader.expectArguments(1);
+                        scene.maxParticleAge = reader.number(0);
+                        if (!(scene.maxParticleAge >= 0)) {
+                            throw reader.error("max-age must not be negative");
+                        }
+                        break;
+                    case "seed":
+                        reader.expectArguments(1);
+                        scene.seed = reader.integer(0);
+                        break;
+                    case "spacing":
+                        reader.expectArguments(1);
+                        spacing = positive(reader, 0);
+                        break;
+                    case "box":
+                        reader.expectArguments(6);
+                        scene.fills.add(new Fill(false, reader.number(0), reader.number(1), reader.number(2),
+                                reader.number(3), reader.number(4), reader.number(5), spacing));
+                        break;
+                    case "sphere":
+                        reader.expectArguments(4);
+                        scene.fills.add(new Fill(true, reader.number(0), reader.number(1), reader.number(2),
+                                positive(reader, 3), 0, 0, spacing));
+                        break;
+                    case "rigid":
+                        reader.expectArguments(4);
+                        scene.rigidSpheres.add(new RigidSphere3D(readVector(reader, 0), positive(reader, 3)));
+                        break;
+                    case "movable":
+                        reader.expectArguments(5);
+                        scene.rigidSpheres.add(new RigidSphere3D(readVector(reader, 0), positive(reader, 3),
+                                positive(reader, 4)));
+                        break;
+                    case "emitter":
+                        scene.emitters.add(readEmitter(reader));
+                        break;
+                    case "sink":
+                        reader.expectArguments(6);
+                        scene.sinks.add(new Sink3D(reader.number(0), reader.number(1), reader.number(2),
+                                reader.number(3), reader.number(4), reader.number(5)));
+                        break;
+                    default:
+                        throw reader.error("unknown keyword " + reader.keyword());
+                }
+            } catch (IllegalArgumentException e) {
+                throw reader.error(e.getMessage());
+            }
+        }
+        return scene;
+    }
+
+    private static Emitter3D readEmitter(SceneReader reader) throws IOException {
+        if (reader.argumentCount() == 11 && reader.word(0).equals("box")) {
+            return Emitter3D.box(readVector(reader, 1), reader.number(4), reader.number(5), reader.number(6),
+                    readVector(reader, 7), reader.number(10));
+        } else if (reader.argumentCount() == 9 && reader.word(0).equals("ball")) {
+            return Emitter3D.ball(readVector(reader, 1), reader.number(4), readVector(reader, 5), reader.number(8));
+        }
+        throw reader.error("expected emitter box cx cy cz w h l vx vy vz rate or emitter ball cx cy cz r vx vy vz rate");
+    }
+
+    private static Vector3D readVector(SceneReader reader, int index) throws IOException {
+        return new Vector3D(reader.number(index), reader.number(index + 1), reader.number(index + 2));
+    }
+
+    private static float positive(SceneReader reader, int index) throws IOException {
+        float value = reader.number(index);
+        if (!(value > 0)) {
+            throw reader.error(reader.keyword() + " needs a positive value, found " + reader.word(index));
+        }
+        return value;
+    }
+
+    /**
+     * Number of particles the scene fills into the given box
+     */
+    public int countParticles(int boxWidth, int boxHeight, int boxLength) {
+        return fill(null, (float) boxWidth / width, (float) boxHeight / height, (float) boxLength / length);
+    }
+
+    /**
+     * Add the scene to the fluid, stretching the positions and sizes from the domain of the scene to the given box,
+     * which must be the box of {@link Simulation3D}. The particle spacing, the emitter sizes and the velocities are
+     * kept.
+     */
+    public void addTo(Fluid3D fluid, int boxWidth, int boxHeight, int boxLength) {
+        float scaleX = (float) boxWidth / width;
+        float scaleY = (float) boxHeight / height;
+        float scaleZ = (float) boxLength / length;
+        float scaleRadius = Math.min(scaleX, Math.min(scaleY, scaleZ));
+        if (gravity != null) {
+            fluid.gravity = gravity;
+        }
+        if (!Float.isNaN(alpha)) {
+            fluid.alpha = alpha;
+        }
+        if (!Float.isNaN(beta)) {
+            fluid.beta = beta;
+            fluid.delta = delta;
+        }
+        if (!Float.isNaN(timeStep)) {
+            fluid.setTimeStep(timeStep);
+        }
+        if (!Float.isNaN(maxParticleAge)) {
+            fluid.setMaxParticleAge(maxParticleAge);
+        }
+        if (seed != null) {
+            fluid.setSeed(seed);
+            fluid.setDeterministic(true);
+        }
+
+        ParticleStore3D particles = fluid.getParticleStore();
+        particles.ensureCapacity(particles.size() + fill(null, scaleX, scaleY, scaleZ));
+        fill(particles, scaleX, scaleY, scaleZ);
+
+        for (RigidSphere3D rigidSphere : rigidSpheres) {
+            Vector3D center = scaled(rigidSphere.center, scaleX, scaleY, scaleZ);
+            if (rigidSphere.movable) {
+                fluid.addMovableRigidBody(center, (int) (rigidSphere.radius * scaleRadius), rigidSphere.mass);
+            } else {
+                fluid.addFixedRigidBody(center, rigidSphere.radius * scaleRadius);
+            }
+        }
+        for (Emitter3D emitter : emitters) {
+            fluid.addEmitter(new Emitter3D(emitter.shape, scaled(emitter.center, scaleX, scaleY, scaleZ),
+                    emitter.width, emitter.height, emitter.length, emitter.velocity, emitter.rate));
+        }
+        for (Sink3D sink : sinks) {
+            fluid.addSink(new Sink3D(sink.minX * scaleX, sink.minY * scaleY, sink.minZ * scaleZ,
+                    sink.maxX * scaleX, sink.maxY * scaleY, sink.maxZ * scaleZ));
+        }
+    }
+
+    private static Vector3D scaled(Vector3D v, float scaleX, float scaleY, float scaleZ) {
+        return new Vector3D(v.getX() * scaleX, v.getY() * scaleY, v.getZ() * scaleZ);
+    }
+
+    /**
+     * Add the particles of every fill to the storage, or only count them if particles is null
+     */
+    private int fill(ParticleStore3D particles, float scaleX, float scaleY, float scaleZ) {
+        int count = 0;
+        for (Fill fill : fills) {
+            float spacing = fill.spacing;
+            if (!fill.ball) {
+                float minX = fill.minX * scaleX;
+                float minY = fill.minY * scaleY;
+                float minZ = fill.minZ * scaleZ;
+                int nx = SceneReader.latticePoints(minX, fill.maxX * scaleX, spacing);
+                int ny = SceneReader.latticePoints(minY, fill.maxY * scaleY, spacing);
+                int nz = SceneReader.latticePoints(minZ, fill.maxZ * scaleZ, spacing);
+                if (particles != null) {
+                    for (int i = 0; i < nx; i++) {
+                        for (int j = 0; j < ny; j++) {
+                            for (int k = 0; k < nz; k++) {
+                                particles.add(minX + i * spacing, minY + j * spacing, minZ + k * spacing);
+                            }
+                        }
+                    }
+                }
+                count += nx * ny * nz;
+            } else {
+                float centerX = fill.minX * scaleX;
+                float centerY = fill.minY * scaleY;
+                float centerZ = fill.minZ * scaleZ;
+                float radius = fill.maxX * Math.min(scaleX, Math.min(scaleY, scaleZ));
+                int reach = (int) (radius / spacing);
+                for (int i = -reach; i <= reach; i++) {
+                    for (int j = -reach; j <= reach; j++) {
+                        for (int k = -reach; k <= reach; k++) {
+                            float dx = i * spacing;
+                            float dy = j * spacing;
+                            float dz = k * spacing;
+                            if (dx * dx + dy * dy + dz * dz <= radius * radius) {
+                                if (particles != null) {
+                                    particles.add(centerX + dx, centerY + dy, centerZ + dz);
+                                }
+                                count++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
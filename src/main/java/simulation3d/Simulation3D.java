@@ -1,26 +1,195 @@
 package simulation3d;
 
-import java.io.FileWriter;
+import core.MetricsLog;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Simulation3D {
     public static int canvasHeight; // Y
     public static int canvasLength; // Z
     public static int boxWidth; // X
+    private static final String BINARY_OUTPUT = "3DSimulationResult.bin";
+    private static final String TEXT_OUTPUT = "3DSimulationResult.txt";
+    private static final String COMPRESSED_OUTPUT = "3DSimulationResult.flc";
+    private static final float FRAME_TIME = 6; // Simulated time per output frame, two default steps
 
     private static Fluid3D fluid;
-    private static PrintWriter printWriter;
+    private static FrameWriter frameWriter;
     private static int frameLimit = 250;
     private static int currentFrame = 0;
     private static int currentStep = 0;
+    private static boolean textOutput = false; // Write the legacy text format instead of the binary one
+    private static boolean compressedOutput = false; // Write the compressed binary format instead of the plain one
+    private static float precision = CompressedFrameWriter.DEFAULT_PRECISION; // Quantum relative to the box size
+    private static int keyframeInterval = CompressedFrameWriter.DEFAULT_KEYFRAME_INTERVAL;
+    private static boolean deflate = false; // Deflate every compressed frame
+    private static String outputFile = null;
+    private static boolean syncOutput = false; // Write frames on the simulation thread
+    private static Path checkpointFile = null; // Where the periodic checkpoints go, none if null
+    private static int checkpointInterval = 100; // Frames between two checkpoints
+    private static Path resumeFile = null; // Checkpoint to continue from
+    private static Path sceneFile = null; // Scene to load instead of the preset model
+    private static MetricsLog metricsLog = null; // Periodic metrics dump, none if null
+    private static String metricsFile = null;
+    private static int metricsInterval = 10; // Steps between two metrics rows
+    private static float skin = -1; // Verlet skin of the neighbor lists, -1 keeps the default or the checkpoint's
+    private static boolean jacobi = false; // Use the Jacobi relaxation, otherwise keep the default or the checkpoint's
+    private static int relaxIterations = 0; // Relaxation sweeps per step, 0 keeps the default or the checkpoint's
+    private static boolean adaptive = false; // Use the adaptive time step, otherwise keep the default or the checkpoint's
+    private static float maxTimeStep = 0; // Upper bound of the adaptive step, 0 keeps the default or the checkpoint's
+    private static int reorderInterval = -1; // Steps between two particle reorderings, -1 keeps the default or the checkpoint's
+    private static float maxAge = -1; // Lifetime of the particles, -1 keeps the default or the checkpoint's
+    private static Long seed = null; // Seed of a deterministic run, null keeps the scene's or the checkpoint's mode
 
     public static void main(String[] args) {
+        // Options start with "--", everything else is positional
+        List<String> positional = new ArrayList<>();
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("--text")) {
+                textOutput = true;
+            } else if (args[a].equals("--compress")) {
+                compressedOutput = true;
+            } else if (args[a].equals("--precision") && a + 1 < args.length) {
+                try {
+                    precision = Float.parseFloat(args[++a]);
+                    if (!(precision > 0 && precision < 1)) {
+                        System.out.println("Precision Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Precision Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--keyframe-every") && a + 1 < args.length) {
+                try {
+                    keyframeInterval = Integer.parseInt(args[++a]);
+                    if (keyframeInterval < 1) {
+                        System.out.println("Keyframe Interval Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Keyframe Interval Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--deflate")) {
+                deflate = true;
+            } else if (args[a].equals("--sync")) {
+                syncOutput = true;
+            } else if (args[a].equals("--output") && a + 1 < args.length) {
+                outputFile = args[++a];
+            } else if (args[a].equals("--checkpoint") && a + 1 < args.length) {
+                checkpointFile = Paths.get(args[++a]);
+            } else if (args[a].equals("--checkpoint-every") && a + 1 < args.length) {
+                try {
+                    checkpointInterval = Integer.parseInt(args[++a]);
+                    if (checkpointInterval < 1) {
+                        System.out.println("Checkpoint Interval Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Checkpoint Interval Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--metrics") && a + 1 < args.length) {
+                metricsFile = args[++a];
+            } else if (args[a].equals("--metrics-every") && a + 1 < args.length) {
+                try {
+                    metricsInterval = Integer.parseInt(args[++a]);
+                    if (metricsInterval < 1) {
+                        System.out.println("Metrics Interval Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Metrics Interval Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--skin") && a + 1 < args.length) {
+                try {
+                    skin = Float.parseFloat(args[++a]);
+                    if (skin < 0) {
+                        System.out.println("Skin Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Skin Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--adaptive")) {
+                adaptive = true;
+            } else if (args[a].equals("--max-dt") && a + 1 < args.length) {
+                try {
+                    maxTimeStep = Float.parseFloat(args[++a]);
+                    if (!(maxTimeStep > 0)) {
+                        System.out.println("Maximum Time Step Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Maximum Time Step Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--reorder-every") && a + 1 < args.length) {
+                try {
+                    reorderInterval = Integer.parseInt(args[++a]);
+                    if (reorderInterval < 0) {
+                        System.out.println("Reorder Interval Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Reorder Interval Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--max-age") && a + 1 < args.length) {
+                try {
+                    maxAge = Float.parseFloat(args[++a]);
+                    if (!(maxAge >= 0)) {
+                        System.out.println("Maximum Age Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Maximum Age Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--seed") && a + 1 < args.length) {
+                try {
+                    seed = Long.parseLong(args[++a]);
+                } catch (NumberFormatException e) {
+                    System.out.println("Seed Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--jacobi")) {
+                jacobi = true;
+            } else if (args[a].equals("--relax-iterations") && a + 1 < args.length) {
+                try {
+                    relaxIterations = Integer.parseInt(args[++a]);
+                    if (relaxIterations < 1) {
+                        System.out.println("Relaxation Iterations Invalid!");
+                        System.exit(-1);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Relaxation Iterations Invalid!");
+                    System.exit(-1);
+                }
+            } else if (args[a].equals("--scene") && a + 1 < args.length) {
+                sceneFile = Paths.get(args[++a]);
+            } else if (args[a].equals("--resume") && a + 1 < args.length) {
+                resumeFile = Paths.get(args[++a]);
+            } else if (args[a].startsWith("--")) {
+                System.out.println("Unknown Option " + args[a] + "!");
+                System.exit(-1);
+            } else {
+                positional.add(args[a]);
+            }
+        }
+
         int modelNum = 0;
-        if (args.length > 1) {
+        int threadCount = 1;
+        if (positional.size() >= 1) {
             try {
-                modelNum = Integer.parseInt(args[0]);
-                if (modelNum < 0 || modelNum > 4) {
+                modelNum = Integer.parseInt(positional.get(0));
+                if (modelNum < 0 || modelNum > 5) {
                     System.out.println("Model Num Invalid!");
                     System.exit(-1);
                 }
@@ -29,39 +198,110 @@ public class Simulation3D {
                 System.exit(-1);
             }
         }
-        if (args.length == 2) {
+        if (positional.size() >= 2) {
             try {
-                frameLimit = Integer.parseInt(args[1]);
+                frameLimit = Integer.parseInt(positional.get(1));
             } catch (NumberFormatException e) {
                 System.out.println("Frame Limit Invalid!");
                 System.exit(-1);
             }
         }
+        if (positional.size() >= 3) {
+            try {
+                threadCount = Integer.parseInt(positional.get(2));
+                if (threadCount < 1) {
+                    System.out.println("Thread Count Invalid!");
+                    System.exit(-1);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Thread Count Invalid!");
+                System.exit(-1);
+            }
+        }
 
-        PresetModelLoader3D presetModelLoader3D = new PresetModelLoader3D(modelNum);
-
-        canvasHeight = presetModelLoader3D.getHeight();
-        canvasLength = presetModelLoader3D.getLength();
-        boxWidth = presetModelLoader3D.getWidth();
-
-        fluid = new Fluid3D();
-
-        presetModelLoader3D.initFluid(fluid);
-        settings();
+        if (resumeFile != null) {
+            // Continue from the checkpoint instead of the preset model
+            Checkpoint3D checkpoint = null;
+            try {
+                checkpoint = Checkpoint3D.read(resumeFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Checkpoint File Invalid!");
+                System.exit(-1);
+            }
+            boxWidth = checkpoint.box[0];
+            canvasHeight = checkpoint.box[1];
+            canvasLength = checkpoint.box[2];
+            fluid = checkpoint.fluid;
+            currentStep = checkpoint.step;
+            currentFrame = checkpoint.frame;
+            if (checkpointFile == null) {
+                checkpointFile = resumeFile;
+            }
+            if (seed != null) {
+                fluid.setSeed(seed);
+                fluid.setDeterministic(true);
+            }
+            System.out.println(String.format("Resumed at Frame %d", currentFrame));
+        } else {
+            Scene3D scene = null;
+            try {
+                scene = sceneFile != null ? Scene3D.read(sceneFile) : Scene3D.preset(modelNum);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Scene File Invalid!");
+                System.exit(-1);
+            }
 
-        printWriter.println(fluid.getParticles().size());
-        printWriter.println(frameLimit);
-        printWriter.println(canvasHeight);
+            canvasHeight = scene.height;
+            canvasLength = scene.length;
+            boxWidth = scene.width;
+            if (seed != null) {
+                scene.seed = seed;
+            }
 
-        printWriter.println(fluid.getRigidSpheres().size());
-        for (RigidSphere3D sphere3D : fluid.getRigidSpheres()) {
-            printWriter.println(
-                    String.format("%d %d %d %d",
-                            (int) sphere3D.center.getX(),
-                            (int) sphere3D.center.getY(),
-                            (int) sphere3D.center.getZ(),
-                            (int) sphere3D.radius));
+            fluid = new Fluid3D();
+            scene.addTo(fluid, boxWidth, canvasHeight, canvasLength);
+        }
+        fluid.setThreadCount(threadCount);
+        if (skin >= 0) {
+            fluid.setNeighborSkin(skin);
+        }
+        if (jacobi) {
+            fluid.setJacobiRelaxation(true);
+        }
+        if (relaxIterations > 0) {
+            fluid.setRelaxationIterations(relaxIterations);
+        }
+        if (adaptive) {
+            fluid.setAdaptiveTimeStep(true);
+        }
+        if (maxTimeStep > 0) {
+            fluid.setMaxTimeStep(maxTimeStep);
+        }
+        if (reorderInterval >= 0) {
+            fluid.setReorderInterval(reorderInterval);
         }
+        if (maxAge >= 0) {
+            fluid.setMaxParticleAge(maxAge);
+        }
+        if (textOutput && (!fluid.getEmitters().isEmpty() || !fluid.getSinks().isEmpty()
+                || fluid.getMaxParticleAge() > 0)) {
+            // The text format has a single particle count in its header
+            System.out.println("Text Output Cannot Record a Changing Particle Count!");
+            System.exit(-1);
+        }
+        if (textOutput && compressedOutput) {
+            System.out.println("Text Output Cannot Be Compressed!");
+            System.exit(-1);
+        }
+        if (textOutput && resumeFile != null) {
+            // The text frames written before the checkpoint cannot be kept, its header holds the frame count
+            System.out.println("Text Output Cannot Be Resumed!");
+            System.exit(-1);
+        }
+        fluid.getMetrics().register("Fluid3D");
+        settings();
 
         while (true) {
             draw();
@@ -70,36 +310,102 @@ public class Simulation3D {
 
     public static void settings() {
         try {
-            FileWriter fileWriter = new FileWriter("3DSimulationResult.txt");
-            printWriter = new PrintWriter(fileWriter);
+            Path binaryOutput = Paths.get(outputFile != null ? outputFile
+                    : compressedOutput ? COMPRESSED_OUTPUT : BINARY_OUTPUT);
+            if (!textOutput && currentFrame > 0 && binaryOutput.toFile().exists()) {
+                // A resumed binary run keeps the frames that were written before the checkpoint
+                if (compressedOutput) {
+                    frameWriter = CompressedFrameWriter.resume(binaryOutput, currentFrame);
+                } else {
+                    frameWriter = BinaryFrameWriter.resume(binaryOutput, currentFrame);
+                }
+            } else {
+                if (textOutput) {
+                    frameWriter = new TextFrameWriter(outputFile != null ? outputFile : TEXT_OUTPUT);
+                } else if (compressedOutput) {
+                    frameWriter = new CompressedFrameWriter(binaryOutput, precision, keyframeInterval, deflate);
+                } else {
+                    frameWriter = new BinaryFrameWriter(binaryOutput);
+                }
+                frameWriter.writeHeader(fluid.getParticleStore().size(), frameLimit - currentFrame,
+                        new int[]{boxWidth, canvasHeight, canvasLength}, fluid.getRigidSpheres());
+            }
+            if (!syncOutput) {
+                frameWriter = new AsyncFrameWriter(frameWriter);
+            }
+            if (metricsFile != null) {
+                metricsLog = new MetricsLog(Paths.get(metricsFile));
+            }
         } catch (IOException e) {
             e.printStackTrace();
+            System.exit(-1);
         }
     }
 
     public static void draw() {
 
-        // Simulate the fluid
-        fluid.simulationStep();
-        currentStep += 1;
-
-        // Draw 1 frame each two steps
-        if (currentStep % 2 == 1) {
-            for (Particle3D particle : fluid.getParticles()) {
-                printWriter.println(
-                        String.format("%d %d %d",
-                                (int) particle.position.getX(),
-                                (int) particle.position.getY(),
-                                (int) particle.position.getZ()));
+        // Simulate the fluid for one frame
+        int previousStep = currentStep;
+        int substeps = fluid.advance(FRAME_TIME);
+        currentStep += substeps;
+        if (metricsLog != null && currentStep / metricsInterval > previousStep / metricsInterval) {
+            try {
+                metricsLog.write(currentStep, fluid.getMetrics());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
+        }
+
+        // Draw the frame
+        ParticleStore3D particles = fluid.getParticleStore();
+        try {
+            frameWriter.writeFrame(particles.size(), particles.x, particles.y, particles.z);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
 
-            currentFrame += 1;
+        currentFrame += 1;
+        if (fluid.isAdaptiveTimeStep()) {
+            System.out.println(String.format("Frame %d Generated in %d Substeps", currentFrame, substeps));
+        } else {
             System.out.println(String.format("Frame %d Generated", currentFrame));
+        }
+
+        if (checkpointFile != null && currentFrame % checkpointInterval == 0 && currentFrame < frameLimit) {
+            saveCheckpoint();
+        }
 
-            if (currentFrame >= frameLimit) {
-                printWriter.close();
-                System.exit(1);
+        if (currentFrame >= frameLimit) {
+            try {
+                frameWriter.close();
+                if (metricsLog != null) {
+                    metricsLog.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Save the fluid state once the frames written so far have reached the disk,
+     * so that a resumed run finds every frame the checkpoint counts
+     */
+    private static void saveCheckpoint() {
+        try {
+            frameWriter.flush();
+            Checkpoint3D.write(checkpointFile, fluid, new int[]{boxWidth, canvasHeight, canvasLength},
+                    currentStep, currentFrame);
+            // A resumed run starts with fresh neighbor lists, so this run rebuilds them at the same step
+            fluid.invalidateNeighbors();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
+        System.out.println(String.format("Checkpoint Saved at Frame %d", currentFrame));
     }
 }
@@ -0,0 +1,29 @@
+package simulation3d;
+
+/**
+ * Drain that removes every particle of a {@link Fluid3D} entering the box [minX, maxX] x [minY, maxY] x [minZ, maxZ]
+ */
+public class Sink3D {
+    public final float minX;
+    public final float minY;
+    public final float minZ;
+    public final float maxX;
+    public final float maxY;
+    public final float maxZ;
+
+    public Sink3D(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (!(minX <= maxX) || !(minY <= maxY) || !(minZ <= maxZ)) {
+            throw new IllegalArgumentException("Sink bounds must not be inverted");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    public boolean contains(float x, float y, float z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+}
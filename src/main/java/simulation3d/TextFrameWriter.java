@@ -0,0 +1,52 @@
+package simulation3d;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Legacy text output: one line per value, with positions truncated to integers.
+ * This is the format read by the Blender import script.
+ */
+public class TextFrameWriter implements FrameWriter {
+    private final PrintWriter printWriter;
+
+    public TextFrameWriter(String fileName) throws IOException {
+        this.printWriter = new PrintWriter(new FileWriter(fileName));
+    }
+
+    @Override
+    public void writeHeader(int particleCount, int frameCount, int[] box, List<RigidSphere3D> spheres) {
+        printWriter.println(particleCount);
+        printWriter.println(frameCount);
+        printWriter.println(box[1]);
+
+        printWriter.println(spheres.size());
+        for (RigidSphere3D sphere3D : spheres) {
+            printWriter.println(
+                    String.format("%d %d %d %d",
+                            (int) sphere3D.center.getX(),
+                            (int) sphere3D.center.getY(),
+                            (int) sphere3D.center.getZ(),
+                            (int) sphere3D.radius));
+        }
+    }
+
+    @Override
+    public void writeFrame(int n, float[] x, float[] y, float[] z) {
+        for (int i = 0; i < n; i++) {
+            printWriter.println(String.format("%d %d %d", (int) x[i], (int) y[i], (int) z[i]));
+        }
+    }
+
+    @Override
+    public void flush() {
+        printWriter.flush();
+    }
+
+    @Override
+    public void close() {
+        printWriter.close();
+    }
+}
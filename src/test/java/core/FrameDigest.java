@@ -0,0 +1,128 @@
+package core;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fingerprint of one frame of a deterministic run, compared against the golden frames of the regression tests.
+ * It holds a hash of the exact position bits and checksums of the positions and speeds, so a change in the last bit
+ * is told apart from a real change of the flow: the hash must match on the machine the golden frames were recorded
+ * on, the checksums only within a relative tolerance elsewhere.
+ * <p>
+ * Golden files list one frame per line, read with the {@link SceneReader}:
+ * <pre>
+ * frame name count hash sumX sumY sumZ sumSpeed2   # sumZ is 0 in 2D, the hash in hexadecimal
+ * </pre>
+ */
+public class FrameDigest {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    public final String name; // Run and step, e.g. serial/model3@100
+    public final int count; // Particle count
+    public final long hash; // FNV-1a hash of the position bits in storage order
+    public final double[] checksums; // Sums of x, y, z and the squared speed
+
+    /**
+     * Result of a comparison against a golden frame
+     */
+    public enum Match {
+        EXACT, WITHIN_TOLERANCE, MISMATCH
+    }
+
+    public FrameDigest(String name, int count, long hash, double[] checksums) {
+        this.name = name;
+        this.count = count;
+        this.hash = hash;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Digest of the current positions and velocities of the particles
+     */
+    public static FrameDigest of(String name, ParticleArrays particles) {
+        int n = particles.size();
+        long hash = FNV_OFFSET;
+        double[] checksums = new double[4];
+        for (int i = 0; i < n; i++) {
+            hash = mix(hash, Float.floatToIntBits(particles.x[i]));
+            hash = mix(hash, Float.floatToIntBits(particles.y[i]));
+            checksums[0] += particles.x[i];
+            checksums[1] += particles.y[i];
+            double speed2 = particles.vx[i] * particles.vx[i] + particles.vy[i] * particles.vy[i];
+            if (particles.z != null) {
+                hash = mix(hash, Float.floatToIntBits(particles.z[i]));
+                checksums[2] += particles.z[i];
+                speed2 += particles.vz[i] * particles.vz[i];
+            }
+            checksums[3] += speed2;
+        }
+        return new FrameDigest(name, n, hash, checksums);
+    }
+
+    private static long mix(long hash, int bits) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (bits >>> shift) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Compare against the golden frame; the checksums match within tolerance if |a - b| <= tolerance * max(1, |b|)
+     */
+    public Match compare(FrameDigest golden, double tolerance) {
+        if (count != golden.count) {
+            return Match.MISMATCH;
+        }
+        if (hash == golden.hash) {
+            return Match.EXACT;
+        }
+        for (int c = 0; c < checksums.length; c++) {
+            double expected = golden.checksums[c];
+            if (!(Math.abs(checksums[c] - expected) <= tolerance * Math.max(1, Math.abs(expected)))) {
+                return Match.MISMATCH;
+            }
+        }
+        return Match.WITHIN_TOLERANCE;
+    }
+
+    /**
+     * Read the frames of a golden file by name
+     */
+    public static Map<String, FrameDigest> read(SceneReader reader) throws IOException {
+        Map<String, FrameDigest> frames = new LinkedHashMap<>();
+        while (reader.next()) {
+            if (!reader.keyword().equals("frame")) {
+                throw reader.error("unknown keyword " + reader.keyword());
+            }
+            reader.expectArguments(7);
+            long hash;
+            try {
+                hash = Long.parseUnsignedLong(reader.word(2), 16);
+            } catch (NumberFormatException e) {
+                throw reader.error("not a hash: " + reader.word(2));
+            }
+            double[] checksums = new double[4];
+            for (int c = 0; c < checksums.length; c++) {
+                try {
+                    checksums[c] = Double.parseDouble(reader.word(3 + c));
+                } catch (NumberFormatException e) {
+                    throw reader.error("not a number: " + reader.word(3 + c));
+                }
+            }
+            frames.put(reader.word(0), new FrameDigest(reader.word(0), (int) reader.integer(1), hash, checksums));
+        }
+        return frames;
+    }
+
+    /**
+     * Line of the golden file; the checksums are written with all their digits
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "frame %s %d %016x %s %s %s %s", name, count, hash,
+                checksums[0], checksums[1], checksums[2], checksums[3]);
+    }
+}
@@ -0,0 +1,50 @@
+package simulation2d;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The 2D step must not allocate per particle once it has warmed up: after the springs and neighbor lists have grown
+ * to their steady size, a step on one thread may only allocate the small fixed cost of starting its phases.
+ */
+class FluidSystemAllocationTest {
+    private static final int WARMUP_STEPS = 200;
+    private static final int MEASURED_STEPS = 100;
+    private static final long MAX_BYTES_PER_STEP = 1024;
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 3})
+    void steadyStepDoesNotAllocate(int model) throws IOException {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        FluidSystem fluidSystem = Scene.preset(model).createFluidSystem();
+        fluidSystem.setThreadCount(1);
+        for (int step = 0; step < WARMUP_STEPS; step++) {
+            fluidSystem.simulationStep();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int step = 0; step < MEASURED_STEPS; step++) {
+            fluidSystem.simulationStep();
+        }
+        long perStep = (threads.getThreadAllocatedBytes(thread) - before) / MEASURED_STEPS;
+        assertTrue(perStep <= MAX_BYTES_PER_STEP,
+                "Model " + model + " allocates " + perStep + " bytes per step");
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Thread allocation counters are not available on this JVM");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported(),
+                "Thread allocation counters are not available on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
@@ -0,0 +1,140 @@
+package simulation2d;
+
+import core.FrameDigest;
+import core.SceneReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Regression test of the 2D solver: runs every preset model in each {@link Mode} and compares the frames after 1, 10
+ * and 100 steps against the golden frames, see {@link FrameDigest}. After an intended change of the physics,
+ * -Dgolden.record=file writes the golden frames of the current solver instead.
+ */
+class GoldenFramesTest {
+    private static final String GOLDEN = "golden/2d.golden";
+    private static final float STEP_TIME = 2; // Simulated time per step, one default step
+    private static final long SEED = 0;
+    private static final int MODELS = 6;
+    private static final int[] CHECKED_STEPS = {1, 10, 100};
+    private static final int THREADS = 4;
+    private static final double TOLERANCE = 1e-6;
+    private static final Map<String, Map<Integer, FrameDigest>> runs = new HashMap<>(); // Checked frames by run
+    private static Map<String, FrameDigest> golden;
+
+    /**
+     * Solver settings a preset is checked in, with the thread counts that must give the same frames
+     */
+    enum Mode {
+        SERIAL(false, false, 1), // The defaults: serial Gauss-Seidel relaxation and springs
+        JACOBI(false, true, 1),
+        SEEDED(true, false, 1, THREADS), // Deterministic mode from SEED, the same on any thread count
+        SEEDED_JACOBI(true, true, 1, THREADS);
+
+        final boolean seeded;
+        final boolean jacobi;
+        final int[] threads;
+
+        Mode(boolean seeded, boolean jacobi, int... threads) {
+            this.seeded = seeded;
+            this.jacobi = jacobi;
+            this.threads = threads;
+        }
+    }
+
+    static List<Arguments> frames() {
+        List<Arguments> frames = new ArrayList<>();
+        for (Mode mode : Mode.values()) {
+            for (int model = 0; model < MODELS; model++) {
+                for (int step : CHECKED_STEPS) {
+                    for (int threads : mode.threads) {
+                        frames.add(Arguments.of(mode, model, step, threads));
+                    }
+                }
+            }
+        }
+        return frames;
+    }
+
+    @ParameterizedTest(name = "{0} model {1} step {2} on {3} threads")
+    @MethodSource("frames")
+    @DisabledIfSystemProperty(named = "golden.record", matches = ".+")
+    void matchesGoldenFrame(Mode mode, int model, int step, int threads) throws IOException {
+        FrameDigest frame = run(mode, model, threads).get(step);
+        FrameDigest expected = golden().get(frame.name);
+        assertNotNull(expected, "No golden frame " + frame.name);
+        assertNotEquals(FrameDigest.Match.MISMATCH, frame.compare(expected, TOLERANCE),
+                "expected " + expected + ", found " + frame);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "golden.record", matches = ".+")
+    void recordGoldenFrames() throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(System.getProperty("golden.record")),
+                StandardCharsets.UTF_8))) {
+            writer.println("# 2D presets, seeded modes from seed " + SEED + ", written by GoldenFramesTest");
+            for (Mode mode : Mode.values()) {
+                for (int model = 0; model < MODELS; model++) {
+                    for (int step : CHECKED_STEPS) {
+                        writer.println(run(mode, model, 1).get(step));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checked frames of a preset run, computed on first use
+     */
+    private static Map<Integer, FrameDigest> run(Mode mode, int model, int threads) throws IOException {
+        String key = mode + "/" + model + "/" + threads;
+        Map<Integer, FrameDigest> frames = runs.get(key);
+        if (frames == null) {
+            frames = new HashMap<>();
+            Scene scene = Scene.preset(model);
+            if (mode.seeded) {
+                scene.seed = SEED;
+            }
+            FluidSystem fluidSystem = scene.createFluidSystem(scene.width, scene.height);
+            fluidSystem.setJacobiRelaxation(mode.jacobi);
+            fluidSystem.setThreadCount(threads);
+            int lastStep = CHECKED_STEPS[CHECKED_STEPS.length - 1];
+            for (int step = 1, checked = 0; step <= lastStep; step++) {
+                fluidSystem.advance(STEP_TIME);
+                if (step == CHECKED_STEPS[checked]) {
+                    frames.put(step, FrameDigest.of(mode.name().toLowerCase(Locale.ROOT) + "/model" + model + "@" + step, fluidSystem.getParticleStore()));
+                    checked++;
+                }
+            }
+            fluidSystem.setThreadCount(1);
+            runs.put(key, frames);
+        }
+        return frames;
+    }
+
+    private static Map<String, FrameDigest> golden() throws IOException {
+        if (golden == null) {
+            try (SceneReader reader = SceneReader.openResource(GOLDEN)) {
+                golden = FrameDigest.read(reader);
+            }
+        }
+        return golden;
+    }
+}
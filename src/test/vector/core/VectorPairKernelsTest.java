@@ -0,0 +1,104 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The SIMD kernels must give bit-identical results to the scalar kernels on neighborhoods of every length up to a
+ * few vectors. Run by the vector profile.
+ */
+class VectorPairKernelsTest {
+    private static final int COUNT = 100;
+    private static final float H = 20;
+    private final PairKernels scalar = new ScalarPairKernels();
+    private final PairKernels vector = new VectorPairKernels();
+
+    @Test
+    void selectedAtStartup() {
+        assertTrue(PairKernels.SELECTED instanceof VectorPairKernels, PairKernels.SELECTED.name());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3})
+    void distancesMatchScalar(int dimensions) {
+        Random random = new Random(dimensions);
+        float[][] positions = positions(random, dimensions);
+        int[] indices = indices(random);
+        float[] expected = new float[COUNT];
+        float[] actual = new float[COUNT];
+        for (int to = 0; to <= COUNT; to++) {
+            int from = to / 3;
+            int i = to % COUNT;
+            scalar.distances(indices, from, to, i, positions[0], positions[1], positions[2], expected);
+            vector.distances(indices, from, to, i, positions[0], positions[1], positions[2], actual);
+            for (int n = from; n < to; n++) {
+                assertBits(expected[n], actual[n], "distance " + n + " of run [" + from + ", " + to + ")");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3})
+    void densitiesMatchScalar(int dimensions) {
+        Random random = new Random(dimensions);
+        float[][] positions = positions(random, dimensions);
+        int[] indices = indices(random);
+        float[] expectedDistance = new float[COUNT];
+        float[] actualDistance = new float[COUNT];
+        float[] expectedRho = new float[COUNT];
+        float[] actualRho = new float[COUNT];
+        float[] expectedRhoNear = new float[COUNT];
+        float[] actualRhoNear = new float[COUNT];
+        for (int to = 0; to <= COUNT; to++) {
+            int from = to / 3;
+            int i = to % COUNT;
+            // No exclusion, the particle itself and a neighbor in the run
+            int[] excluded = {-1, i, indices[Math.max(0, to - 1)]};
+            for (int e : excluded) {
+                String run = "run [" + from + ", " + to + ") without " + e;
+                scalar.densities(indices, from, to, i, e, H, positions[0], positions[1], positions[2],
+                        expectedDistance, expectedRho, expectedRhoNear);
+                vector.densities(indices, from, to, i, e, H, positions[0], positions[1], positions[2],
+                        actualDistance, actualRho, actualRhoNear);
+                for (int n = from; n < to; n++) {
+                    assertBits(expectedDistance[n], actualDistance[n], "distance " + n + " of " + run);
+                }
+                assertBits(expectedRho[i], actualRho[i], "rho of " + run);
+                assertBits(expectedRhoNear[i], actualRhoNear[i], "rho_near of " + run);
+            }
+        }
+    }
+
+    /**
+     * Positions within a few interaction ranges, so that about half of the neighbors are in range; z is null in 2D
+     */
+    private static float[][] positions(Random random, int dimensions) {
+        float[][] positions = new float[3][];
+        for (int axis = 0; axis < dimensions; axis++) {
+            positions[axis] = new float[COUNT];
+            for (int p = 0; p < COUNT; p++) {
+                positions[axis][p] = random.nextFloat() * 2 * H;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] indices(Random random) {
+        int[] indices = new int[COUNT];
+        for (int n = 0; n < COUNT; n++) {
+            indices[n] = random.nextInt(COUNT);
+        }
+        return indices;
+    }
+
+    private static void assertBits(float expected, float actual, String message) {
+        assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual),
+                message + ": expected " + expected + ", found " + actual);
+    }
+}
@@ -0,0 +1,164 @@
+package core;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD pairwise kernels on the JDK Vector API. Built by the vector profile and only usable on a JVM started with
+ * --add-modules jdk.incubator.vector and a processor with 256-bit vectors; the selection in {@link PairKernels} falls
+ * back to the scalar kernels otherwise. A vector holds one block of DENSITY_LANES neighbors.
+ */
+public class VectorPairKernels extends PairKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_256;
+    private static final VectorSpecies<Integer> INDEX_SPECIES = IntVector.SPECIES_256;
+
+    public VectorPairKernels() {
+        if (FloatVector.SPECIES_PREFERRED.vectorBitSize() < SPECIES.vectorBitSize()) {
+            throw new UnsupportedOperationException("No 256-bit vectors");
+        }
+    }
+
+    @Override
+    public void distances(int[] indices, int from, int to, int i, float[] x, float[] y, float[] z, float[] distance) {
+        FloatVector x_i = FloatVector.broadcast(SPECIES, x[i]);
+        FloatVector y_i = FloatVector.broadcast(SPECIES, y[i]);
+        int n = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        if (z == null) {
+            for (; n < upperBound; n += SPECIES.length()) {
+                FloatVector r_x = FloatVector.fromArray(SPECIES, x, 0, indices, n).sub(x_i);
+                FloatVector r_y = FloatVector.fromArray(SPECIES, y, 0, indices, n).sub(y_i);
+                r_x.mul(r_x).add(r_y.mul(r_y)).sqrt().intoArray(distance, n);
+            }
+        } else {
+            FloatVector z_i = FloatVector.broadcast(SPECIES, z[i]);
+            for (; n < upperBound; n += SPECIES.length()) {
+                FloatVector r_x = FloatVector.fromArray(SPECIES, x, 0, indices, n).sub(x_i);
+                FloatVector r_y = FloatVector.fromArray(SPECIES, y, 0, indices, n).sub(y_i);
+                FloatVector r_z = FloatVector.fromArray(SPECIES, z, 0, indices, n).sub(z_i);
+                r_x.mul(r_x).add(r_y.mul(r_y)).add(r_z.mul(r_z)).sqrt().intoArray(distance, n);
+            }
+        }
+        tailDistances(indices, n, to, i, x, y, z, distance);
+    }
+
+    @Override
+    public void densities(int[] indices, int from, int to, int i, int excluded, float h, float[] x, float[] y,
+                          float[] z, float[] distance, float[] rho, float[] rhoNear) {
+        // The vectors only stay in registers if no vector is merged from two branches and the Vector API calls are
+        // not nested too deep for the JIT, so 2D and 3D have their own loops with all constants hoisted
+        int n = z == null ? blockDensities(indices, from, to, i, excluded, h, x, y, distance, rho, rhoNear)
+                : blockDensities(indices, from, to, i, excluded, h, x, y, z, distance, rho, rhoNear);
+        tailDistances(indices, n, to, i, x, y, z, distance);
+
+        // The rest of the run after the whole blocks
+        float rho_i = rho[i];
+        float rhoNear_i = rhoNear[i];
+        for (; n < to; n++) {
+            float w = ScalarPairKernels.weight(indices[n], excluded, distance[n], h);
+            rho_i += w * w;
+            rhoNear_i += w * w * w;
+        }
+        rho[i] = rho_i;
+        rhoNear[i] = rhoNear_i;
+    }
+
+    /**
+     * 2D distances and lane-ordered density sums of the whole blocks of the run; returns the end of the blocks
+     */
+    private static int blockDensities(int[] indices, int from, int to, int i, int excluded, float h, float[] x,
+                                      float[] y, float[] distance, float[] rho, float[] rhoNear) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1F);
+        FloatVector hVector = FloatVector.broadcast(SPECIES, h);
+        IntVector excludedVector = IntVector.broadcast(INDEX_SPECIES, excluded);
+        FloatVector x_i = FloatVector.broadcast(SPECIES, x[i]);
+        FloatVector y_i = FloatVector.broadcast(SPECIES, y[i]);
+        FloatVector partialRho = zero;
+        FloatVector partialRhoNear = zero;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        for (int n = from; n < upperBound; n += SPECIES.length()) {
+            FloatVector r_x = FloatVector.fromArray(SPECIES, x, 0, indices, n).sub(x_i);
+            FloatVector r_y = FloatVector.fromArray(SPECIES, y, 0, indices, n).sub(y_i);
+            FloatVector d = r_x.mul(r_x).add(r_y.mul(r_y)).sqrt();
+            d.intoArray(distance, n);
+            FloatVector q = d.div(hVector);
+            VectorMask<Float> inRange = q.compare(VectorOperators.LT, one).and(IntVector.fromArray(INDEX_SPECIES,
+                    indices, n).compare(VectorOperators.NE, excludedVector).cast(SPECIES));
+            FloatVector w = one.sub(q).blend(zero, inRange.not());
+            FloatVector w2 = w.mul(w);
+            partialRho = partialRho.add(w2);
+            partialRhoNear = partialRhoNear.add(w2.mul(w));
+        }
+        // Lanes in order; constant lane numbers compile to plain extracts
+        rho[i] = partialRho.lane(0) + partialRho.lane(1) + partialRho.lane(2) + partialRho.lane(3)
+                + partialRho.lane(4) + partialRho.lane(5) + partialRho.lane(6) + partialRho.lane(7);
+        rhoNear[i] = partialRhoNear.lane(0) + partialRhoNear.lane(1) + partialRhoNear.lane(2)
+                + partialRhoNear.lane(3) + partialRhoNear.lane(4) + partialRhoNear.lane(5) + partialRhoNear.lane(6)
+                + partialRhoNear.lane(7);
+        return upperBound;
+    }
+
+    /**
+     * 3D distances and lane-ordered density sums of the whole blocks of the run; returns the end of the blocks
+     */
+    private static int blockDensities(int[] indices, int from, int to, int i, int excluded, float h, float[] x,
+                                      float[] y, float[] z, float[] distance, float[] rho, float[] rhoNear) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1F);
+        FloatVector hVector = FloatVector.broadcast(SPECIES, h);
+        IntVector excludedVector = IntVector.broadcast(INDEX_SPECIES, excluded);
+        FloatVector x_i = FloatVector.broadcast(SPECIES, x[i]);
+        FloatVector y_i = FloatVector.broadcast(SPECIES, y[i]);
+        FloatVector z_i = FloatVector.broadcast(SPECIES, z[i]);
+        FloatVector partialRho = zero;
+        FloatVector partialRhoNear = zero;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        for (int n = from; n < upperBound; n += SPECIES.length()) {
+            FloatVector r_x = FloatVector.fromArray(SPECIES, x, 0, indices, n).sub(x_i);
+            FloatVector r_y = FloatVector.fromArray(SPECIES, y, 0, indices, n).sub(y_i);
+            FloatVector r_z = FloatVector.fromArray(SPECIES, z, 0, indices, n).sub(z_i);
+            FloatVector d = r_x.mul(r_x).add(r_y.mul(r_y)).add(r_z.mul(r_z)).sqrt();
+            d.intoArray(distance, n);
+            FloatVector q = d.div(hVector);
+            VectorMask<Float> inRange = q.compare(VectorOperators.LT, one).and(IntVector.fromArray(INDEX_SPECIES,
+                    indices, n).compare(VectorOperators.NE, excludedVector).cast(SPECIES));
+            FloatVector w = one.sub(q).blend(zero, inRange.not());
+            FloatVector w2 = w.mul(w);
+            partialRho = partialRho.add(w2);
+            partialRhoNear = partialRhoNear.add(w2.mul(w));
+        }
+        // Lanes in order; constant lane numbers compile to plain extracts
+        rho[i] = partialRho.lane(0) + partialRho.lane(1) + partialRho.lane(2) + partialRho.lane(3)
+                + partialRho.lane(4) + partialRho.lane(5) + partialRho.lane(6) + partialRho.lane(7);
+        rhoNear[i] = partialRhoNear.lane(0) + partialRhoNear.lane(1) + partialRhoNear.lane(2)
+                + partialRhoNear.lane(3) + partialRhoNear.lane(4) + partialRhoNear.lane(5) + partialRhoNear.lane(6)
+                + partialRhoNear.lane(7);
+        return upperBound;
+    }
+
+    private static void tailDistances(int[] indices, int from, int to, int i, float[] x, float[] y, float[] z,
+                                      float[] distance) {
+        float x_i = x[i];
+        float y_i = y[i];
+        for (int n = from; n < to; n++) {
+            int j = indices[n];
+            float r_x = x[j] - x_i;
+            float r_y = y[j] - y_i;
+            float r_squared = r_x * r_x + r_y * r_y;
+            if (z != null) {
+                float r_z = z[j] - z[i];
+                r_squared += r_z * r_z;
+            }
+            distance[n] = (float) Math.sqrt(r_squared);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+}